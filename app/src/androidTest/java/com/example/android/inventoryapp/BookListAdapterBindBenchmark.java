@@ -0,0 +1,84 @@
+package com.example.android.inventoryapp;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import com.example.android.inventoryapp.data.BookSummary;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counts the objects allocated per call of {@link BookListAdapter#onBindViewHolder}, which runs
+ * for every row that scrolls into view. The result is reported as instrumentation status.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookListAdapterBindBenchmark {
+
+    private static final int BOOK_COUNT = 1000;
+    private static final int BIND_COUNT = 10000;
+
+    /**
+     * Upper bound for the average number of allocations per bind. Binding only sets precomputed
+     * texts and colors, so anything above this means per-row objects are created again.
+     */
+    private static final double MAX_ALLOCATIONS_PER_BIND = 1;
+
+    @Test
+    public void bindViewHolder_allocations() {
+        final Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        final Context context = new ContextThemeWrapper(
+                InstrumentationRegistry.getTargetContext(), R.style.AppTheme);
+        final double[] allocationsPerBind = new double[1];
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                List<BookSummary> books = new ArrayList<>(BOOK_COUNT);
+                for (int i = 0; i < BOOK_COUNT; i++) {
+                    books.add(new BookSummary(i + 1, "Book " + i, 999 + i, i % 5, 0));
+                }
+
+                BookListAdapter adapter = new BookListAdapter(context, null);
+                adapter.setBooks(books);
+                FrameLayout parent = new FrameLayout(context);
+                BookListAdapter.ViewHolder[] holders = {
+                        adapter.onCreateViewHolder(parent, 0),
+                        adapter.onCreateViewHolder(parent, 0)};
+
+                // Warm up, so one-time allocations of the views are not counted
+                for (int i = 0; i < BOOK_COUNT; i++) {
+                    adapter.onBindViewHolder(holders[i % 2], i);
+                }
+
+                Debug.startAllocCounting();
+                Debug.resetThreadAllocCount();
+                for (int i = 0; i < BIND_COUNT; i++) {
+                    adapter.onBindViewHolder(holders[i % 2], i % BOOK_COUNT);
+                }
+                int allocations = Debug.getThreadAllocCount();
+                Debug.stopAllocCounting();
+
+                allocationsPerBind[0] = (double) allocations / BIND_COUNT;
+            }
+        });
+
+        Bundle results = new Bundle();
+        results.putDouble("allocations_per_bind", allocationsPerBind[0]);
+        instrumentation.sendStatus(0, results);
+
+        assertTrue("Allocations per bind: " + allocationsPerBind[0],
+                allocationsPerBind[0] <= MAX_ALLOCATIONS_PER_BIND);
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.android.inventoryapp;
+
+import android.app.Instrumentation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.view.ContextThemeWrapper;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookSummary;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a change notification for a single book reloads its row from the provider. The
+ * tests run on the app's data, so they only write books of their own supplier, which are
+ * deleted again.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookListAdapterTest {
+
+    private static final String SUPPLIER_NAME = "Adapter Test";
+
+    /**
+     * Time to wait for the row to be reloaded in the background
+     */
+    private static final long RELOAD_WAIT_SECONDS = 5;
+
+    private Instrumentation mInstrumentation;
+    private Context mContext;
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mContext = new ContextThemeWrapper(InstrumentationRegistry.getTargetContext(), R.style.AppTheme);
+        mContentResolver = mContext.getContentResolver();
+        deleteTestBooks();
+    }
+
+    @After
+    public void tearDown() {
+        deleteTestBooks();
+    }
+
+    @Test
+    public void changedBook_isReloadedInPlace() throws InterruptedException {
+        Uri bookUri = insertBook("Ulysses", 3);
+        BookListAdapter adapter = showBook(bookUri, false);
+        RowChanges changes = observe(adapter);
+
+        setQuantity(bookUri, 4);
+        notifyChanged(adapter, bookUri);
+
+        assertTrue("Row was not reloaded", changes.mDone.await(RELOAD_WAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, changes.mChanged);
+        assertEquals(0, changes.mRemoved);
+    }
+
+    @Test
+    public void bookOutsideFilter_isRemoved() throws InterruptedException {
+        Uri bookUri = insertBook("Ulysses", 3);
+        BookListAdapter adapter = showBook(bookUri, true);
+        RowChanges changes = observe(adapter);
+
+        setQuantity(bookUri, 0);
+        notifyChanged(adapter, bookUri);
+
+        assertTrue("Row was not reloaded", changes.mDone.await(RELOAD_WAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, changes.mChanged);
+        assertEquals(1, changes.mRemoved);
+    }
+
+    /**
+     * Records the changes of the rows, which are dispatched on the main thread
+     */
+    private static class RowChanges extends RecyclerView.AdapterDataObserver {
+        final CountDownLatch mDone = new CountDownLatch(1);
+        int mChanged = 0;
+        int mRemoved = 0;
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            mChanged += itemCount;
+            mDone.countDown();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            mRemoved += itemCount;
+            mDone.countDown();
+        }
+    }
+
+    /**
+     * @return an adapter that shows the given book, optionally only if it is in stock
+     */
+    private BookListAdapter showBook(Uri bookUri, final boolean inStockOnly) {
+        final BookSummary book = new BookSummary(ContentUris.parseId(bookUri), "Ulysses", 1299, 3, 0);
+        final BookListAdapter[] adapter = new BookListAdapter[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                adapter[0] = new BookListAdapter(mContext, null);
+                adapter[0].setSortOrder(BookEntry.SORT_NAME, inStockOnly);
+                // Replaces the window that is loaded for the sort order
+                adapter[0].setBooks(Collections.singletonList(book));
+            }
+        });
+        return adapter[0];
+    }
+
+    private RowChanges observe(final BookListAdapter adapter) {
+        final RowChanges changes = new RowChanges();
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                adapter.registerAdapterDataObserver(changes);
+            }
+        });
+        return changes;
+    }
+
+    private void notifyChanged(final BookListAdapter adapter, final Uri bookUri) {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                adapter.onBooksChanged(bookUri);
+            }
+        });
+    }
+
+    private Uri insertBook(String productName, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, productName);
+        values.put(BookEntry.COLUMN_PRICE, 1299);
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, SUPPLIER_NAME);
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE, "+39 06 6982");
+        return mContentResolver.insert(BookEntry.CONTENT_URI, values);
+    }
+
+    private void setQuantity(Uri bookUri, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        assertEquals(1, mContentResolver.update(bookUri, values, null, null));
+    }
+
+    private void deleteTestBooks() {
+        mContentResolver.delete(BookEntry.CONTENT_URI, BookEntry.COLUMN_SUPPLIER_NAME + "=?",
+                new String[]{SUPPLIER_NAME});
+    }
+}
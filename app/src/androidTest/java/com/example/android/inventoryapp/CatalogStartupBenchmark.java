@@ -0,0 +1,163 @@
+package com.example.android.inventoryapp;
+
+import android.app.Activity;
+import android.app.Application;
+import android.app.Instrumentation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewTreeObserver;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the time from starting the {@link CatalogActivity} to its first frame that shows
+ * books. The result is reported as instrumentation status. The first launch after the process
+ * started includes opening the database, unless the warm-up of {@link InventoryApplication}
+ * finished before.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CatalogStartupBenchmark {
+
+    private static final int BOOK_COUNT = 1000;
+    private static final int LAUNCH_COUNT = 10;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    /**
+     * Supplier of the books of the benchmark, so they can be deleted again
+     */
+    private static final String SUPPLIER_NAME = "Startup Benchmark";
+
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        mContentResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+        ContentValues[] books = new ContentValues[BOOK_COUNT];
+        for (int i = 0; i < BOOK_COUNT; i++) {
+            books[i] = new ContentValues();
+            books[i].put(BookEntry.COLUMN_PRODUCT_NAME, "Book " + i);
+            books[i].put(BookEntry.COLUMN_PRICE, 999 + i);
+            books[i].put(BookEntry.COLUMN_QUANTITY, i % 5);
+            books[i].put(BookEntry.COLUMN_SUPPLIER_NAME, SUPPLIER_NAME);
+            books[i].put(BookEntry.COLUMN_SUPPLIER_PHONE, "+1 555 0100");
+        }
+        mContentResolver.bulkInsert(BookEntry.CONTENT_URI, books);
+    }
+
+    @After
+    public void tearDown() {
+        mContentResolver.delete(BookEntry.CONTENT_URI, BookEntry.COLUMN_SUPPLIER_NAME + "=?",
+                new String[]{SUPPLIER_NAME});
+    }
+
+    @Test
+    public void timeToFirstCatalogFrame() throws InterruptedException {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        long[] launchMillis = new long[LAUNCH_COUNT];
+        for (int i = 0; i < LAUNCH_COUNT; i++) {
+            launchMillis[i] = launch(instrumentation);
+            assertTrue("Catalog did not show any books", launchMillis[i] >= 0);
+        }
+
+        long firstLaunchMillis = launchMillis[0];
+        Arrays.sort(launchMillis);
+        Bundle results = new Bundle();
+        results.putLong("first_launch_ms", firstLaunchMillis);
+        results.putLong("median_launch_ms", launchMillis[LAUNCH_COUNT / 2]);
+        results.putLong("max_launch_ms", launchMillis[LAUNCH_COUNT - 1]);
+        instrumentation.sendStatus(0, results);
+    }
+
+    /**
+     * Start the catalog and wait until it is about to draw its first frame with books
+     *
+     * @return the time from the start in milliseconds, or -1 if no books were shown in time
+     */
+    private static long launch(Instrumentation instrumentation) throws InterruptedException {
+        Context context = instrumentation.getTargetContext();
+        Application application = (Application) context.getApplicationContext();
+        final CountDownLatch firstFrame = new CountDownLatch(1);
+        final long[] firstFrameTime = new long[1];
+
+        // The list exists once the activity was created, before its first frame is drawn
+        Application.ActivityLifecycleCallbacks callbacks = new ActivityStartedCallbacks() {
+            @Override
+            public void onActivityStarted(Activity activity) {
+                if (!(activity instanceof CatalogActivity)) {
+                    return;
+                }
+                final RecyclerView list = activity.findViewById(R.id.list_view_books);
+                list.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        if (list.getChildCount() > 0) {
+                            firstFrameTime[0] = SystemClock.uptimeMillis();
+                            list.getViewTreeObserver().removeOnPreDrawListener(this);
+                            firstFrame.countDown();
+                        }
+                        return true;
+                    }
+                });
+            }
+        };
+        application.registerActivityLifecycleCallbacks(callbacks);
+
+        Intent intent = new Intent(context, CatalogActivity.class);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        long start = SystemClock.uptimeMillis();
+        Activity activity = instrumentation.startActivitySync(intent);
+        boolean shown = firstFrame.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        application.unregisterActivityLifecycleCallbacks(callbacks);
+        activity.finish();
+        instrumentation.waitForIdleSync();
+        return shown ? firstFrameTime[0] - start : -1;
+    }
+
+    /**
+     * Lifecycle callbacks that only need to know when an activity was started
+     */
+    private abstract static class ActivityStartedCallbacks implements Application.ActivityLifecycleCallbacks {
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+}
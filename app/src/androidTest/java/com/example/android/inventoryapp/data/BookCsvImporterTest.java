@@ -0,0 +1,65 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that books the provider would reject are reported with their line. The tests run on
+ * the app's data, so they only import books of their own supplier, which are deleted again.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookCsvImporterTest {
+
+    private static final String SUPPLIER_NAME = "Import Test";
+
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        mContentResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+        deleteTestBooks();
+    }
+
+    @After
+    public void tearDown() {
+        deleteTestBooks();
+    }
+
+    @Test
+    public void duplicateIsbns_areReportedWithTheirLines() throws IOException {
+        String csv = "productName,supplierName,supplierPhoneNumber,isbn\n"
+                + "Ulysses," + SUPPLIER_NAME + ",555,9780306406157\n"
+                + "Dubliners," + SUPPLIER_NAME + ",555,0-306-40615-2\n"
+                + "Faust," + SUPPLIER_NAME + ",555,\n";
+        BookCsvImporter.Result result = new BookCsvImporter(mContentResolver)
+                .importBooks(new StringReader(csv), null);
+        assertEquals(2, result.getImportedCount());
+        assertEquals(1, result.getErrorCount());
+        assertEquals(3, result.getErrors().get(0).getLineNumber());
+
+        // The ISBN is now in the catalog, so a second import rejects it as well
+        result = new BookCsvImporter(mContentResolver).importBooks(new StringReader(csv), null);
+        assertEquals(1, result.getImportedCount());
+        assertEquals(2, result.getErrorCount());
+        assertEquals(2, result.getErrors().get(0).getLineNumber());
+        assertEquals(3, result.getErrors().get(1).getLineNumber());
+    }
+
+    private void deleteTestBooks() {
+        mContentResolver.delete(BookEntry.CONTENT_URI, BookEntry.COLUMN_SUPPLIER_NAME + "=?",
+                new String[]{SUPPLIER_NAME});
+    }
+}
@@ -0,0 +1,335 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookContract.StatsEntry;
+import com.example.android.inventoryapp.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the schema migrations of {@link BookDbHelper} and that the queries of the app are
+ * answered through the indexes instead of full table scans.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookDbHelperTest {
+
+    private BookDbHelper mDbHelper;
+    private SQLiteDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        // An in-memory database, so the tests do not touch the app's data
+        mDbHelper = new BookDbHelper(InstrumentationRegistry.getTargetContext(), null);
+        mDatabase = mDbHelper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+    }
+
+    @Test
+    public void catalogQuery_usesCoveringIndex() {
+        String plan = explain("SELECT " + BookEntry._ID + ", " + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                        + BookEntry.COLUMN_PRICE + ", " + BookEntry.COLUMN_QUANTITY + ", "
+                        + BookEntry.COLUMN_LAST_MODIFIED
+                        + " FROM " + BookEntry.TABLE_NAME
+                        + " WHERE " + BookEntry.COLUMN_PRODUCT_NAME + " >= ? AND ("
+                        + BookEntry.COLUMN_PRODUCT_NAME + " > ? OR " + BookEntry._ID + " > ?)"
+                        + " ORDER BY " + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry._ID
+                        + " LIMIT 50",
+                "A", "A", "1");
+
+        assertTrue(plan, plan.contains("COVERING INDEX " + BookDbHelper.INDEX_CATALOG));
+        assertTrue(plan, !plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void sortedCatalogQueries_readIndexInOrder() {
+        assertSortedByIndex(BookEntry.COLUMN_PRICE, "ASC", BookDbHelper.INDEX_PRICE);
+        assertSortedByIndex(BookEntry.COLUMN_QUANTITY, "ASC", BookDbHelper.INDEX_QUANTITY);
+        assertSortedByIndex(BookEntry.COLUMN_LAST_MODIFIED, "DESC", BookDbHelper.INDEX_LAST_MODIFIED);
+    }
+
+    @Test
+    public void lastModified_followsBooksTable() {
+        long supplierId = insertSupplier("The Pope");
+        long id = insertBook("The Bible", 1299, 0, supplierId);
+        long inserted = queryLastModified(id);
+        assertTrue(inserted > 0);
+
+        mDatabase.execSQL("UPDATE " + BookEntry.TABLE_NAME + " SET "
+                + BookEntry.COLUMN_LAST_MODIFIED + " = 0");
+        mDatabase.execSQL("UPDATE " + BookEntry.TABLE_NAME + " SET "
+                + BookEntry.COLUMN_QUANTITY + " = 1");
+        assertTrue(queryLastModified(id) >= inserted);
+    }
+
+    @Test
+    public void version_incrementsOnUpdate() {
+        long supplierId = insertSupplier("The Pope");
+        long id = insertBook("The Bible", 1299, 0, supplierId);
+        String selection = BookEntry._ID + " = " + id;
+        assertEquals(0, DatabaseUtils.longForQuery(mDatabase, "SELECT " + BookEntry.COLUMN_VERSION
+                + " FROM " + BookEntry.TABLE_NAME + " WHERE " + selection, null));
+
+        // A conditional update only succeeds for the current version
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_QUANTITY, 1);
+        assertEquals(1, mDatabase.update(BookEntry.TABLE_NAME, values,
+                selection + " AND " + BookEntry.COLUMN_VERSION + " = 0", null));
+        assertEquals(0, mDatabase.update(BookEntry.TABLE_NAME, values,
+                selection + " AND " + BookEntry.COLUMN_VERSION + " = 0", null));
+        assertEquals(1, DatabaseUtils.longForQuery(mDatabase, "SELECT " + BookEntry.COLUMN_VERSION
+                + " FROM " + BookDbHelper.VIEW_BOOKS_WITH_SUPPLIERS + " WHERE " + selection, null));
+    }
+
+    @Test
+    public void supplierBooksQuery_usesSupplierIdIndex() {
+        String plan = explain("SELECT " + BookEntry._ID + " FROM " + BookEntry.TABLE_NAME
+                + " WHERE " + BookEntry.COLUMN_SUPPLIER_ID + " = ?", "1");
+
+        assertTrue(plan, plan.contains(BookDbHelper.INDEX_SUPPLIER_ID));
+    }
+
+    @Test
+    public void supplierNameQuery_usesIndexes() {
+        String plan = explain("SELECT * FROM " + BookDbHelper.VIEW_BOOKS_WITH_SUPPLIERS
+                + " WHERE " + BookEntry.COLUMN_SUPPLIER_NAME + " = ?", "The Pope");
+
+        assertTrue(plan, plan.contains(BookDbHelper.INDEX_SUPPLIER_ID));
+        assertTrue(plan, !plan.contains("SCAN"));
+    }
+
+    @Test
+    public void outOfStockQuery_usesQuantityIndex() {
+        String plan = explain("SELECT " + BookEntry._ID + " FROM " + BookEntry.TABLE_NAME
+                + " WHERE " + BookEntry.COLUMN_QUANTITY + " = ?", "0");
+
+        assertTrue(plan, plan.contains(BookDbHelper.INDEX_QUANTITY));
+    }
+
+    @Test
+    public void fullTextIndex_followsBooksTable() {
+        long supplierId = insertSupplier("The Pope");
+        insertBook("The Bible", 1299, 0, supplierId);
+        assertEquals(1, countFullTextMatches("bib*"));
+        assertEquals(1, countFullTextMatches("pop*"));
+
+        mDatabase.execSQL("UPDATE " + BookEntry.TABLE_NAME + " SET "
+                + BookEntry.COLUMN_PRODUCT_NAME + " = 'Faust'");
+        assertEquals(0, countFullTextMatches("bib*"));
+        assertEquals(1, countFullTextMatches("fau*"));
+
+        mDatabase.execSQL("UPDATE " + SupplierEntry.TABLE_NAME + " SET "
+                + SupplierEntry.COLUMN_NAME + " = 'Goethe'");
+        assertEquals(0, countFullTextMatches("pop*"));
+        assertEquals(1, countFullTextMatches("goe*"));
+
+        mDatabase.execSQL("DELETE FROM " + BookEntry.TABLE_NAME);
+        assertEquals(0, countFullTextMatches("fau*"));
+    }
+
+    @Test
+    public void statsTable_followsBooksTable() {
+        long supplierId = insertSupplier("The Pope");
+        insertBook("The Bible", 1299, 0, supplierId);
+        insertBook("Faust", 2999, 42, supplierId);
+        assertStats(2, 42, 42 * 2999, 1);
+
+        mDatabase.execSQL("UPDATE " + BookEntry.TABLE_NAME + " SET "
+                + BookEntry.COLUMN_QUANTITY + " = 2, " + BookEntry.COLUMN_PRICE + " = 1000"
+                + " WHERE " + BookEntry.COLUMN_PRODUCT_NAME + " = 'The Bible'");
+        assertStats(2, 44, 42 * 2999 + 2 * 1000, 0);
+
+        mDatabase.execSQL("DELETE FROM " + BookEntry.TABLE_NAME
+                + " WHERE " + BookEntry.COLUMN_PRODUCT_NAME + " = 'Faust'");
+        assertStats(1, 2, 2 * 1000, 0);
+    }
+
+    @Test
+    public void isbnQuery_usesUniqueIndex() {
+        String plan = explain("SELECT * FROM " + BookDbHelper.VIEW_BOOKS_WITH_SUPPLIERS
+                + " WHERE " + BookEntry.COLUMN_ISBN + " = ?", "9780306406157");
+
+        assertTrue(plan, plan.contains(BookDbHelper.INDEX_ISBN));
+        assertTrue(plan, !plan.contains("SCAN"));
+    }
+
+    @Test(expected = SQLiteConstraintException.class)
+    public void isbn_belongsToOneBook() {
+        long supplierId = insertSupplier("The Pope");
+        // Books without ISBN do not conflict
+        insertBook("The Bible", 1299, 0, supplierId);
+        insertBook("Faust", 2999, 42, supplierId);
+
+        mDatabase.execSQL("UPDATE " + BookEntry.TABLE_NAME + " SET "
+                + BookEntry.COLUMN_ISBN + " = '9780306406157'");
+    }
+
+    @Test(expected = SQLiteConstraintException.class)
+    public void book_requiresExistingSupplier() {
+        insertBook("The Bible", 1299, 0, 42);
+    }
+
+    @Test
+    public void upgradeFromVersion1_keepsBooksAndAddsIndexes() {
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        try {
+            db.execSQL("CREATE TABLE " + BookEntry.TABLE_NAME + " ("
+                    + BookEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + BookEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
+                    + BookEntry.COLUMN_PRICE + " REAL NOT NULL DEFAULT 9999, "
+                    + BookEntry.COLUMN_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                    + BookEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL, "
+                    + BookEntry.COLUMN_SUPPLIER_PHONE + " TEXT NOT NULL);");
+            db.execSQL("INSERT INTO " + BookEntry.TABLE_NAME + " ("
+                    + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_PRICE + ", "
+                    + BookEntry.COLUMN_QUANTITY + ", " + BookEntry.COLUMN_SUPPLIER_NAME + ", "
+                    + BookEntry.COLUMN_SUPPLIER_PHONE + ") VALUES ('The Bible', 12.99, 3, 'The Pope', '+39 06 6982')");
+
+            mDbHelper.onUpgrade(db, 1, BookDbHelper.DATABASE_VERSION);
+
+            Cursor cursor = db.rawQuery("SELECT " + BookEntry.COLUMN_PRICE + " FROM " + BookEntry.TABLE_NAME, null);
+            try {
+                assertEquals(1, cursor.getCount());
+                cursor.moveToFirst();
+                // Prices are converted to cents
+                assertEquals(1299, cursor.getLong(0));
+            } finally {
+                cursor.close();
+            }
+
+            cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index' AND name IN (?, ?, ?, ?, ?, ?)",
+                    new String[]{BookDbHelper.INDEX_CATALOG, BookDbHelper.INDEX_SUPPLIER_ID,
+                            BookDbHelper.INDEX_QUANTITY, BookDbHelper.INDEX_PRICE,
+                            BookDbHelper.INDEX_LAST_MODIFIED, BookDbHelper.INDEX_ISBN});
+            try {
+                assertEquals(6, cursor.getCount());
+            } finally {
+                cursor.close();
+            }
+
+            // The supplier was moved into its own table
+            cursor = db.rawQuery("SELECT " + BookEntry.COLUMN_SUPPLIER_NAME + ", "
+                    + BookEntry.COLUMN_SUPPLIER_PHONE + " FROM " + BookDbHelper.VIEW_BOOKS_WITH_SUPPLIERS, null);
+            try {
+                assertEquals(1, cursor.getCount());
+                cursor.moveToFirst();
+                assertEquals("The Pope", cursor.getString(0));
+                assertEquals("+39 06 6982", cursor.getString(1));
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    private long insertSupplier(String name) {
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_NAME, name);
+        values.put(SupplierEntry.COLUMN_PHONE, "+39 06 6982");
+        return mDatabase.insertOrThrow(SupplierEntry.TABLE_NAME, null, values);
+    }
+
+    private long insertBook(String productName, long price, int quantity, long supplierId) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, productName);
+        values.put(BookEntry.COLUMN_PRICE, price);
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_SUPPLIER_ID, supplierId);
+        return mDatabase.insertOrThrow(BookEntry.TABLE_NAME, null, values);
+    }
+
+    /**
+     * A page sorted by the given column with a filter on another column, as queried by the
+     * provider, must be read from the index of the sort column without sorting
+     */
+    private void assertSortedByIndex(String sortColumn, String direction, String index) {
+        String inclusive = direction.equals("DESC") ? " <= " : " >= ";
+        String exclusive = direction.equals("DESC") ? " < " : " > ";
+        String plan = explain("SELECT " + BookEntry._ID + ", " + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                        + BookEntry.COLUMN_PRICE + ", " + BookEntry.COLUMN_QUANTITY + ", "
+                        + BookEntry.COLUMN_LAST_MODIFIED
+                        + " FROM " + BookEntry.TABLE_NAME
+                        + " WHERE +" + BookEntry.COLUMN_SUPPLIER_ID + " = ? AND "
+                        + sortColumn + inclusive + "CAST(? AS INTEGER) AND ("
+                        + sortColumn + exclusive + "CAST(? AS INTEGER) OR " + BookEntry._ID + exclusive + "?)"
+                        + " ORDER BY " + sortColumn + " " + direction + ", " + BookEntry._ID + " " + direction
+                        + " LIMIT 50",
+                "1", "100", "100", "1");
+
+        assertTrue(plan, plan.contains("INDEX " + index));
+        assertTrue(plan, !plan.contains("TEMP B-TREE"));
+    }
+
+    private long queryLastModified(long id) {
+        Cursor cursor = mDatabase.query(BookEntry.TABLE_NAME, new String[]{BookEntry.COLUMN_LAST_MODIFIED},
+                BookEntry._ID + " = ?", new String[]{String.valueOf(id)}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void assertStats(int bookCount, long totalUnits, long stockValue, int outOfStockCount) {
+        Cursor cursor = mDatabase.query(StatsEntry.TABLE_NAME, new String[]{
+                StatsEntry.COLUMN_BOOK_COUNT, StatsEntry.COLUMN_TOTAL_UNITS,
+                StatsEntry.COLUMN_STOCK_VALUE, StatsEntry.COLUMN_OUT_OF_STOCK_COUNT}, null, null,
+                null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(bookCount, cursor.getInt(0));
+            assertEquals(totalUnits, cursor.getLong(1));
+            assertEquals(stockValue, cursor.getLong(2));
+            assertEquals(outOfStockCount, cursor.getInt(3));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int countFullTextMatches(String matchQuery) {
+        Cursor cursor = mDatabase.rawQuery("SELECT docid FROM " + BookDbHelper.TABLE_BOOKS_FTS
+                + " WHERE " + BookDbHelper.TABLE_BOOKS_FTS + " MATCH ?", new String[]{matchQuery});
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the details of all steps of the query plan of the given query
+     */
+    private String explain(String sql, String... args) {
+        Cursor cursor = mDatabase.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        StringBuilder plan = new StringBuilder();
+        try {
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailIndex)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+}
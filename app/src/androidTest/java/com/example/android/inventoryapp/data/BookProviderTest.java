@@ -0,0 +1,347 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks which queries the provider accepts and that batches are applied atomically. The
+ * tests run on the app's data, so they only write books of their own supplier, which are
+ * deleted again.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderTest {
+
+    private static final String SUPPLIER_NAME = "Provider Test";
+
+    /**
+     * Time to wait for change notifications, longer than the window in which they are collected
+     */
+    private static final long NOTIFICATION_WAIT_MILLIS = 1000;
+
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        mContentResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+        deleteTestBooks();
+    }
+
+    @After
+    public void tearDown() {
+        deleteTestBooks();
+    }
+
+    @Test
+    public void batchWithInvalidOperation_changesNothing() throws RemoteException {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(BookEntry.CONTENT_URI)
+                .withValues(createBook("The Bible")).build());
+        ContentValues noName = createBook("Faust");
+        noName.remove(BookEntry.COLUMN_PRODUCT_NAME);
+        operations.add(ContentProviderOperation.newInsert(BookEntry.CONTENT_URI)
+                .withValues(noName).build());
+
+        try {
+            mContentResolver.applyBatch(BookContract.CONTENT_AUTHORITY, operations);
+            fail("Book without a name was inserted");
+        } catch (IllegalArgumentException | OperationApplicationException e) {
+            // Expected
+        }
+        assertEquals(0, queryTestBookIds().size());
+    }
+
+    @Test
+    public void validBatch_commitsAllRowsAndNotifiesOnce()
+            throws RemoteException, OperationApplicationException {
+        final List<Uri> notifiedUris = Collections.synchronizedList(new ArrayList<Uri>());
+        ContentObserver observer = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                notifiedUris.add(uri);
+            }
+        };
+        mContentResolver.registerContentObserver(BookEntry.CONTENT_URI, true, observer);
+        try {
+            ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+            for (String name : new String[]{"The Bible", "Faust", "Ulysses"}) {
+                operations.add(ContentProviderOperation.newInsert(BookEntry.CONTENT_URI)
+                        .withValues(createBook(name)).build());
+            }
+            ContentProviderResult[] results =
+                    mContentResolver.applyBatch(BookContract.CONTENT_AUTHORITY, operations);
+            SystemClock.sleep(NOTIFICATION_WAIT_MILLIS);
+
+            assertEquals(3, queryTestBookIds().size());
+            // Each inserted book is notified once, after the batch was committed
+            List<Uri> bookUris = new ArrayList<>();
+            for (ContentProviderResult result : results) {
+                bookUris.add(result.uri);
+            }
+            synchronized (notifiedUris) {
+                assertEquals(notifiedUris.toString(), bookUris.size(), notifiedUris.size());
+                assertEquals(new HashSet<>(bookUris), new HashSet<>(notifiedUris));
+            }
+        } finally {
+            mContentResolver.unregisterContentObserver(observer);
+        }
+    }
+
+    @Test
+    public void updateWithExpectedVersion_onlyAppliesToCurrentVersion() {
+        Uri bookUri = mContentResolver.insert(BookEntry.CONTENT_URI, createBook("The Bible"));
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRICE, 999);
+
+        assertEquals(1, mContentResolver.update(withExpectedVersion(bookUri, 0), values, null, null));
+        assertEquals(1, queryVersion(bookUri));
+        // The version the caller read is outdated now
+        values.put(BookEntry.COLUMN_PRICE, 1999);
+        assertEquals(0, mContentResolver.update(withExpectedVersion(bookUri, 0), values, null, null));
+        assertEquals(1, queryVersion(bookUri));
+
+        try {
+            mContentResolver.update(withExpectedVersion(BookEntry.CONTENT_URI, 1), values, null, null);
+            fail("Expected version was accepted for all books");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void staleUpdateInBatch_keepsOtherOperations()
+            throws RemoteException, OperationApplicationException {
+        Uri bookUri = mContentResolver.insert(BookEntry.CONTENT_URI, createBook("The Bible"));
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRICE, 999);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, SUPPLIER_NAME);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(BookEntry.CONTENT_URI)
+                .withValues(createBook("Faust")).build());
+        operations.add(ContentProviderOperation.newUpdate(withExpectedVersion(bookUri, 42))
+                .withValues(values).build());
+        ContentProviderResult[] results =
+                mContentResolver.applyBatch(BookContract.CONTENT_AUTHORITY, operations);
+
+        assertEquals(0, (int) results[1].count);
+        // The insert next to the stale update was committed
+        assertEquals(2, queryTestBookIds().size());
+        assertEquals(0, queryVersion(bookUri));
+    }
+
+    @Test
+    public void query_requiresKnownColumns() {
+        Uri page = BookEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(BookEntry.QUERY_PARAMETER_LIMIT, "10").build();
+        assertRejected(page, null);
+        assertRejected(page, new String[]{BookEntry._ID, "COUNT(*) AS count"});
+        assertRejected(SupplierEntry.CONTENT_URI, new String[]{BookEntry.COLUMN_PRODUCT_NAME});
+    }
+
+    @Test
+    public void booksQuery_requiresBoundedPage() {
+        String[] projection = {BookEntry._ID};
+        assertRejected(BookEntry.CONTENT_URI, projection);
+        assertRejected(BookEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(BookEntry.QUERY_PARAMETER_OFFSET, "10").build(), projection);
+        assertRejected(BookEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(BookEntry.QUERY_PARAMETER_LIMIT, "100000").build(), projection);
+
+        Cursor cursor = mContentResolver.query(BookEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(BookEntry.QUERY_PARAMETER_LIMIT, "2").build(), projection,
+                null, null, null);
+        try {
+            assertTrue(cursor.getCount() <= 2);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void query_readsWindowAtOffset() {
+        String[] projection = {SupplierEntry._ID};
+        Cursor all = mContentResolver.query(SupplierEntry.CONTENT_URI, projection, null, null,
+                SupplierEntry._ID);
+        Cursor window = mContentResolver.query(SupplierEntry.CONTENT_URI.buildUpon()
+                        .appendQueryParameter(BookEntry.QUERY_PARAMETER_LIMIT, "2")
+                        .appendQueryParameter(BookEntry.QUERY_PARAMETER_OFFSET, "1").build(),
+                projection, null, null, SupplierEntry._ID);
+        try {
+            assertEquals(Math.min(2, Math.max(0, all.getCount() - 1)), window.getCount());
+            while (window.moveToNext()) {
+                assertTrue(all.moveToPosition(window.getPosition() + 1));
+                assertEquals(all.getLong(0), window.getLong(0));
+            }
+        } finally {
+            all.close();
+            window.close();
+        }
+
+        // An offset without a limit would still read all rows
+        assertRejected(SupplierEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(BookEntry.QUERY_PARAMETER_OFFSET, "1").build(), projection);
+    }
+
+    @Test
+    public void isbnQuery_findsBookByEitherForm() {
+        ContentValues values = createBook("The Bible");
+        values.put(BookEntry.COLUMN_ISBN, "0-306-40615-2");
+        long id = ContentUris.parseId(mContentResolver.insert(BookEntry.CONTENT_URI, values));
+
+        String[] projection = {BookEntry._ID, BookEntry.COLUMN_ISBN};
+        Cursor cursor = mContentResolver.query(BookEntry.buildIsbnUri("978-0-306-40615-7"), projection,
+                null, null, null);
+        try {
+            // The ISBN-10 was stored as its ISBN-13
+            assertEquals(1, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(id, cursor.getLong(0));
+            assertEquals("9780306406157", cursor.getString(1));
+        } finally {
+            cursor.close();
+        }
+
+        // A misread barcode finds nothing
+        cursor = mContentResolver.query(BookEntry.buildIsbnUri("978-0-306-40615-8"), projection,
+                null, null, null);
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void duplicateIsbnInBatch_failsWholeBatch()
+            throws RemoteException, OperationApplicationException {
+        ContentValues values = createBook("The Bible");
+        values.put(BookEntry.COLUMN_ISBN, "9780306406157");
+        mContentResolver.insert(BookEntry.CONTENT_URI, values);
+        Uri otherBookUri = mContentResolver.insert(BookEntry.CONTENT_URI, createBook("Ulysses"));
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(BookEntry.CONTENT_URI)
+                .withValues(createBook("Faust")).build());
+        operations.add(ContentProviderOperation.newUpdate(otherBookUri)
+                .withValue(BookEntry.COLUMN_ISBN, "0-306-40615-2").build());
+        try {
+            mContentResolver.applyBatch(BookContract.CONTENT_AUTHORITY, operations);
+            fail("Second book with the same ISBN was accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        // The insert of the batch was rolled back as well
+        assertEquals(2, queryTestBookIds().size());
+    }
+
+    @Test
+    public void isbnUpdate_onlyRejectsTakenIsbn() {
+        ContentValues values = createBook("The Bible");
+        values.put(BookEntry.COLUMN_ISBN, "9780306406157");
+        Uri bookUri = mContentResolver.insert(BookEntry.CONTENT_URI, values);
+        mContentResolver.insert(BookEntry.CONTENT_URI, createBook("Ulysses"));
+
+        // Setting a book's own ISBN again, in either form, is not a conflict
+        ContentValues isbn = new ContentValues();
+        isbn.put(BookEntry.COLUMN_ISBN, "0-306-40615-2");
+        assertEquals(1, mContentResolver.update(bookUri, isbn, null, null));
+
+        // An ISBN belongs to a single book, even if it is not taken yet
+        isbn.put(BookEntry.COLUMN_ISBN, "9780804429573");
+        try {
+            mContentResolver.update(BookEntry.CONTENT_URI, isbn, BookEntry.COLUMN_SUPPLIER_NAME + "=?",
+                    new String[]{SUPPLIER_NAME});
+            fail("ISBN was set on several books");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static Uri withExpectedVersion(Uri uri, long version) {
+        return uri.buildUpon()
+                .appendQueryParameter(BookEntry.QUERY_PARAMETER_EXPECTED_VERSION, String.valueOf(version))
+                .build();
+    }
+
+    private long queryVersion(Uri bookUri) {
+        Cursor cursor = mContentResolver.query(bookUri, new String[]{BookEntry.COLUMN_VERSION},
+                null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static ContentValues createBook(String productName) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, productName);
+        values.put(BookEntry.COLUMN_PRICE, 1299);
+        values.put(BookEntry.COLUMN_QUANTITY, 3);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, SUPPLIER_NAME);
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE, "+39 06 6982");
+        return values;
+    }
+
+    /**
+     * @return the IDs of the books written by the tests
+     */
+    private List<Long> queryTestBookIds() {
+        Uri page = BookEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(BookEntry.QUERY_PARAMETER_LIMIT, "100").build();
+        Cursor cursor = mContentResolver.query(page, new String[]{BookEntry._ID},
+                BookEntry.COLUMN_SUPPLIER_NAME + "=?", new String[]{SUPPLIER_NAME}, null);
+        List<Long> ids = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    private void deleteTestBooks() {
+        mContentResolver.delete(BookEntry.CONTENT_URI, BookEntry.COLUMN_SUPPLIER_NAME + "=?",
+                new String[]{SUPPLIER_NAME});
+    }
+
+    private void assertRejected(Uri uri, String[] projection) {
+        try {
+            mContentResolver.query(uri, projection, null, null, null).close();
+            fail("Query of " + uri + " was accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
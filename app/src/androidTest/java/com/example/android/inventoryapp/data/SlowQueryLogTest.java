@@ -0,0 +1,132 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the slow query log and that the queries of the catalog never scan all books, using
+ * the full scan check mode of the provider.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SlowQueryLogTest {
+
+    private static final String SQL_CATALOG_PAGE = "SELECT " + BookEntry._ID + ", "
+            + BookEntry.COLUMN_PRODUCT_NAME + " FROM " + BookEntry.TABLE_NAME
+            + " ORDER BY " + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry._ID + " LIMIT 50";
+
+    private BookDbHelper mDbHelper;
+    private SQLiteDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        // An in-memory database, so the tests do not touch the app's data
+        mDbHelper = new BookDbHelper(InstrumentationRegistry.getTargetContext(), null);
+        mDatabase = mDbHelper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+    }
+
+    @Test
+    public void slowQueries_keepLatestWithPlan() {
+        SlowQueryLog log = new SlowQueryLog(2, 10);
+
+        // Fast queries are not logged
+        log.check(mDatabase, SQL_CATALOG_PAGE, null, 9999999);
+        assertEquals(0, log.getEntries().size());
+
+        log.check(mDatabase, SQL_CATALOG_PAGE, null, 20000000);
+        log.check(mDatabase, "SELECT * FROM " + BookEntry.TABLE_NAME + " WHERE "
+                + BookEntry.COLUMN_PRODUCT_NAME + " LIKE '%Bible%'", null, 30000000);
+        log.check(mDatabase, "SELECT * FROM " + BookEntry.TABLE_NAME + " WHERE "
+                + BookEntry._ID + " = ?", new String[]{"1"}, 40000000);
+
+        List<SlowQueryLog.Entry> entries = log.getEntries();
+        assertEquals(2, entries.size());
+        assertEquals("SELECT * FROM " + BookEntry.TABLE_NAME + " WHERE " + BookEntry.COLUMN_PRODUCT_NAME
+                + " LIKE ?", entries.get(0).mSqlShape);
+        assertEquals(0, entries.get(0).mBindCount);
+        assertEquals(30000, entries.get(0).mDurationMicros);
+        assertTrue(entries.get(0).mPlan, entries.get(0).mPlan.contains("SCAN"));
+        assertEquals(1, entries.get(1).mBindCount);
+        assertTrue(entries.get(1).mPlan, entries.get(1).mPlan.contains("SEARCH"));
+    }
+
+    @Test
+    public void fullScanCheck_failsScanOfBooks() {
+        SlowQueryLog log = new SlowQueryLog(1, 1000);
+        log.setCheckFullScans(true);
+
+        // Reading the books in the order of an index stops at the limit
+        log.check(mDatabase, SQL_CATALOG_PAGE, null, 0);
+        try {
+            log.check(mDatabase, "SELECT * FROM " + BookEntry.TABLE_NAME + " WHERE "
+                    + BookEntry.COLUMN_PRODUCT_NAME + " LIKE ?", new String[]{"%Bible%"}, 0);
+            fail("Scan of all books was not detected");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        // Only checked, but not logged as a slow query
+        assertEquals(0, log.getEntries().size());
+    }
+
+    @Test
+    public void catalogQueries_doNotScanBooks() {
+        ContentResolver resolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+        setCheckFullScans(resolver, true);
+        try {
+            String[] sorts = {BookEntry.SORT_NAME, BookEntry.SORT_PRICE, BookEntry.SORT_QUANTITY,
+                    BookEntry.SORT_CHANGED};
+            for (String sort : sorts) {
+                Uri.Builder page = BookEntry.CONTENT_URI.buildUpon()
+                        .appendQueryParameter(BookEntry.QUERY_PARAMETER_LIMIT, "50")
+                        .appendQueryParameter(BookEntry.QUERY_PARAMETER_SORT, sort);
+                query(resolver, page.build());
+                query(resolver, page.appendQueryParameter(BookEntry.QUERY_PARAMETER_AFTER_KEY, "1")
+                        .appendQueryParameter(BookEntry.QUERY_PARAMETER_AFTER_ID, "1").build());
+                query(resolver, page.appendQueryParameter(BookEntry.QUERY_PARAMETER_IN_STOCK, "true")
+                        .appendQueryParameter(BookEntry.QUERY_PARAMETER_SUPPLIER_ID, "1")
+                        .appendQueryParameter(BookEntry.QUERY_PARAMETER_MIN_PRICE, "100").build());
+            }
+            query(resolver, ContentUris.withAppendedId(BookEntry.CONTENT_URI, 1));
+            query(resolver, BookEntry.buildIsbnUri("9780306406157"));
+            query(resolver, BookEntry.SEARCH_URI.buildUpon()
+                    .appendQueryParameter(BookEntry.QUERY_PARAMETER_SEARCH, "bible").build());
+        } finally {
+            setCheckFullScans(resolver, false);
+        }
+    }
+
+    private static void setCheckFullScans(ContentResolver resolver, boolean checkFullScans) {
+        Bundle extras = new Bundle();
+        extras.putBoolean(BookEntry.EXTRA_CHECK_FULL_SCANS, checkFullScans);
+        resolver.call(BookEntry.CONTENT_URI, BookEntry.METHOD_CONFIGURE_SLOW_QUERY_LOG, null, extras);
+    }
+
+    private static void query(ContentResolver resolver, Uri uri) {
+        Cursor cursor = resolver.query(uri, BookSummary.PROJECTION, null, null, null);
+        assertTrue(cursor != null);
+        cursor.close();
+    }
+}
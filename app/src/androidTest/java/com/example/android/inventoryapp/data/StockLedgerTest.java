@@ -0,0 +1,118 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookContract.StockMovementEntry;
+import com.example.android.inventoryapp.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the stock movements follow the quantities of the books and that compacting them
+ * keeps the quantities at the snapshot times.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StockLedgerTest {
+
+    private BookDbHelper mDbHelper;
+    private SQLiteDatabase mDatabase;
+    private long mBookId;
+
+    @Before
+    public void setUp() {
+        // An in-memory database, so the tests do not touch the app's data
+        mDbHelper = new BookDbHelper(InstrumentationRegistry.getTargetContext(), null);
+        mDatabase = mDbHelper.getWritableDatabase();
+
+        ContentValues supplier = new ContentValues();
+        supplier.put(SupplierEntry.COLUMN_NAME, "The Pope");
+        supplier.put(SupplierEntry.COLUMN_PHONE, "+39 06 6982");
+        long supplierId = mDatabase.insertOrThrow(SupplierEntry.TABLE_NAME, null, supplier);
+
+        // Three movements at the times 100, 200 and 300
+        ContentValues book = new ContentValues();
+        book.put(BookEntry.COLUMN_PRODUCT_NAME, "The Bible");
+        book.put(BookEntry.COLUMN_QUANTITY, 5);
+        book.put(BookEntry.COLUMN_SUPPLIER_ID, supplierId);
+        mBookId = mDatabase.insertOrThrow(BookEntry.TABLE_NAME, null, book);
+        setQuantity(3);
+        setQuantity(10);
+        mDatabase.execSQL("UPDATE " + StockMovementEntry.TABLE_NAME + " SET "
+                + StockMovementEntry.COLUMN_TIME + " = " + StockMovementEntry._ID + " * 100");
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+    }
+
+    @Test
+    public void movements_followQuantity() {
+        assertEquals(3, countMovements());
+        assertEquals(0, StockLedger.getQuantityAt(mDatabase, mBookId, 50));
+        assertEquals(5, StockLedger.getQuantityAt(mDatabase, mBookId, 150));
+        assertEquals(3, StockLedger.getQuantityAt(mDatabase, mBookId, 250));
+        assertEquals(10, StockLedger.getQuantityAt(mDatabase, mBookId, 350));
+
+        // Setting the same quantity is not a movement
+        setQuantity(10);
+        assertEquals(3, countMovements());
+
+        mDatabase.delete(BookEntry.TABLE_NAME, null, null);
+        assertEquals(4, countMovements());
+    }
+
+    @Test
+    public void compact_keepsQuantities() {
+        assertEquals(2, StockLedger.compact(mDatabase, 200));
+        assertEquals(1, countMovements());
+        assertEquals(3, StockLedger.getQuantityAt(mDatabase, mBookId, 250));
+        assertEquals(10, StockLedger.getQuantityAt(mDatabase, mBookId, 350));
+
+        assertEquals(1, StockLedger.compact(mDatabase, 300));
+        assertEquals(0, countMovements());
+        assertEquals(3, StockLedger.getQuantityAt(mDatabase, mBookId, 200));
+        assertEquals(10, StockLedger.getQuantityAt(mDatabase, mBookId, 300));
+
+        // Nothing left to compact
+        assertEquals(0, StockLedger.compact(mDatabase, 300));
+        assertEquals(10, StockLedger.getQuantityAt(mDatabase, mBookId, 300));
+    }
+
+    @Test
+    public void movementAtSnapshotTime_countsAfterSnapshot() {
+        assertEquals(3, StockLedger.compact(mDatabase, 300));
+
+        // A sale in the same millisecond as the compaction, but after it
+        setQuantity(9);
+        mDatabase.execSQL("UPDATE " + StockMovementEntry.TABLE_NAME + " SET "
+                + StockMovementEntry.COLUMN_TIME + " = 300");
+        assertEquals(9, StockLedger.getQuantityAt(mDatabase, mBookId, 300));
+
+        // Compacting at the same time again adds the sale to the snapshot
+        assertEquals(1, StockLedger.compact(mDatabase, 300));
+        assertEquals(0, countMovements());
+        assertEquals(9, StockLedger.getQuantityAt(mDatabase, mBookId, 300));
+    }
+
+    private void setQuantity(int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        mDatabase.update(BookEntry.TABLE_NAME, values, BookEntry._ID + " = ?",
+                new String[]{String.valueOf(mBookId)});
+    }
+
+    private long countMovements() {
+        return DatabaseUtils.queryNumEntries(mDatabase, StockMovementEntry.TABLE_NAME);
+    }
+}
@@ -0,0 +1,539 @@
+package com.example.android.inventoryapp;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.VisibleForTesting;
+import android.support.v4.content.ContextCompat;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookPageSource;
+import com.example.android.inventoryapp.data.BookSummary;
+import com.example.android.inventoryapp.data.BookWriteExecutor;
+import com.example.android.inventoryapp.data.Money;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import butterknife.BindView;
+import butterknife.ButterKnife;
+
+/**
+ * Adapter that shows a sliding window of the catalog. Pages are loaded in the background
+ * ahead of the scroll position and dropped once they are far behind it, so the number of books
+ * held in memory does not depend on the size of the catalog.
+ * <p>
+ * The texts of each row are formatted in the background when its page is loaded, so binding
+ * a row while scrolling does not allocate any objects.
+ * <p>
+ * Changes are applied incrementally: a change to a single book only reloads and rebinds its row,
+ * other changes reload the window and only rebind the rows that differ from the current ones.
+ */
+public class BookListAdapter extends RecyclerView.Adapter<BookListAdapter.ViewHolder> {
+
+    /**
+     * Number of books loaded per page
+     */
+    static final int PAGE_SIZE = 50;
+    /**
+     * Start loading the next page once the user scrolled this close to the end of the window
+     */
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE / 2;
+    /**
+     * Maximum number of books kept in the window
+     */
+    private static final int MAX_WINDOW_SIZE = 4 * PAGE_SIZE;
+
+    /**
+     * Single background thread for all page loads, so they are applied in the order they were requested
+     */
+    private static final Executor sLoadExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Callback for a click on a book in the list
+     */
+    interface OnBookClickListener {
+        void onBookClick(long id);
+    }
+
+    private final Context mContext;
+    /**
+     * Source of the pages in the current sort order and filters. It is replaced when they change,
+     * so loads that are still running keep using the one they were started with.
+     */
+    private BookPageSource mPageSource;
+    private final OnBookClickListener mClickListener;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Format for the user's local currency and the colors of the quantity, looked up once per adapter
+     */
+    private final NumberFormat mCurrencyFormatter = NumberFormat.getCurrencyInstance(Locale.getDefault());
+    private final ColorStateList mEmptyStockColor;
+    private final ColorStateList mInStockColor;
+
+    private final List<BookRow> mRows = new ArrayList<>();
+    private boolean mHasMoreBefore = false;
+    private boolean mHasMoreAfter = false;
+    private boolean mLoading = false;
+    /**
+     * Incremented on each reload, so pages that were requested for an older window are discarded
+     */
+    private int mGeneration = 0;
+    /**
+     * Incremented on each change of the rows, so a reloaded window is only diffed against the
+     * rows it was requested for
+     */
+    private int mRowsVersion = 0;
+    /**
+     * Text the catalog is currently searched for, or null to show the whole catalog
+     */
+    private String mSearchText = null;
+
+    private RecyclerView mRecyclerView;
+    private final RecyclerView.OnScrollListener mScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+            loadAroundScrollPosition();
+        }
+    };
+
+    /**
+     * Shared click listeners for all rows. The ViewHolder of the row is stored as the tag of the
+     * clicked view, so the listeners do not have to be recreated whenever a row is bound.
+     */
+    private final View.OnClickListener mItemClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            int position = ((ViewHolder) v.getTag()).getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                mClickListener.onBookClick(getItemId(position));
+            }
+        }
+    };
+    private final View.OnClickListener mSaleClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            int position = ((ViewHolder) v.getTag()).getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
+            //Sell one copy of the current book, the provider checks that it is still in stock
+            BookWriteExecutor.adjustQuantity(v.getContext().getContentResolver(),
+                    getItemId(position), -1, null);
+        }
+    };
+
+    BookListAdapter(Context context, OnBookClickListener clickListener) {
+        mContext = context;
+        mPageSource = new BookPageSource(context.getContentResolver());
+        mClickListener = clickListener;
+        mEmptyStockColor = ColorStateList.valueOf(ContextCompat.getColor(context, R.color.empty_stock));
+        mInStockColor = ColorStateList.valueOf(
+                ContextCompat.getColor(context, R.color.list_item_book_details_text_color));
+        setHasStableIds(true);
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        mRecyclerView = recyclerView;
+        recyclerView.addOnScrollListener(mScrollListener);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        recyclerView.removeOnScrollListener(mScrollListener);
+        mRecyclerView = null;
+        super.onDetachedFromRecyclerView(recyclerView);
+    }
+
+    /**
+     * Only show the books matching the given text, or the whole catalog if it is empty.
+     * Search results are limited to a single window.
+     */
+    void setSearchText(String searchText) {
+        if (searchText != null && searchText.trim().isEmpty()) {
+            searchText = null;
+        }
+        if (searchText == null ? mSearchText == null : searchText.equals(mSearchText)) {
+            return;
+        }
+        mSearchText = searchText;
+        load(null);
+    }
+
+    /**
+     * Sort the catalog by one of the values of {@link BookEntry#QUERY_PARAMETER_SORT} and
+     * optionally only show the books that are in stock. The list starts again at the top.
+     */
+    void setSortOrder(String sort, boolean inStockOnly) {
+        BookPageSource pageSource = new BookPageSource(mContext.getContentResolver()).sortedBy(sort);
+        if (inStockOnly) {
+            pageSource = pageSource.filteredBy(BookEntry.QUERY_PARAMETER_IN_STOCK, String.valueOf(true));
+        }
+        mPageSource = pageSource;
+        load(null);
+    }
+
+    /**
+     * (Re)load the current window, e.g. after the data in the provider changed.
+     * The window keeps its position and starts with the first book that is currently loaded.
+     */
+    void reload() {
+        load(mRows.isEmpty() || mSearchText != null ? null : mRows.get(0).book);
+    }
+
+    /**
+     * Apply a change notification of the provider. If a single book that is shown changed, only
+     * its row is reloaded, otherwise the whole window.
+     */
+    void onBooksChanged(Uri uri) {
+        List<String> segments = uri == null ? null : uri.getPathSegments();
+        if (mSearchText != null || segments == null || segments.size() != 2
+                || !TextUtils.isDigitsOnly(segments.get(1))) {
+            reload();
+            return;
+        }
+
+        final long id = Long.parseLong(segments.get(1));
+        final BookPageSource pageSource = mPageSource;
+        if (indexOf(id) < 0) {
+            // This might be a new book that belongs into the window
+            reload();
+            return;
+        }
+
+        final int generation = mGeneration;
+        sLoadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                BookSummary book = pageSource.loadBook(id);
+                final BookRow row = book == null ? null : toRows(Collections.singletonList(book)).get(0);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        int position = indexOf(id);
+                        if (position < 0) {
+                            return;
+                        }
+                        if (row == null) {
+                            // The book was deleted or does not match the filters anymore
+                            mRows.remove(position);
+                            mRowsVersion++;
+                            notifyItemRemoved(position);
+                        } else if (pageSource.getSortKey(row.book).equals(
+                                pageSource.getSortKey(mRows.get(position).book))) {
+                            // The book stays in place, so only its row has to be rebound
+                            mRows.set(position, row);
+                            mRowsVersion++;
+                            notifyItemChanged(position);
+                        } else {
+                            // The book moved to another position in the catalog
+                            reload();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the position of the book with the given ID in the window, or -1 if it is not in it
+     */
+    private int indexOf(long id) {
+        for (int i = 0; i < mRows.size(); i++) {
+            if (mRows.get(i).book.getId() == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Show the given books without loading them from the provider
+     */
+    @VisibleForTesting
+    void setBooks(List<BookSummary> books) {
+        mGeneration++;
+        mLoading = false;
+        mHasMoreBefore = false;
+        mHasMoreAfter = false;
+        mRows.clear();
+        mRows.addAll(toRows(books));
+        mRowsVersion++;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Replace the window with books loaded from the given book on, or from the start of
+     * the catalog (or search results) if it is null
+     */
+    private void load(final BookSummary first) {
+        final int generation = ++mGeneration;
+        final String searchText = mSearchText;
+        final BookPageSource pageSource = mPageSource;
+        final int windowSize = searchText != null
+                ? MAX_WINDOW_SIZE
+                : Math.min(MAX_WINDOW_SIZE, Math.max(PAGE_SIZE, mRows.size()));
+        final List<BookRow> oldRows = new ArrayList<>(mRows);
+        final int rowsVersion = mRowsVersion;
+        mLoading = true;
+
+        sLoadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<BookSummary> books;
+                if (searchText != null) {
+                    books = pageSource.search(searchText, windowSize);
+                } else if (first == null) {
+                    books = pageSource.loadFirst(windowSize);
+                } else {
+                    books = pageSource.loadFrom(first, windowSize);
+                }
+                final List<BookRow> rows = toRows(books);
+                // Find the rows that actually changed in the background as well
+                final DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new RowDiffCallback(oldRows, rows));
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        mLoading = false;
+                        mRows.clear();
+                        mRows.addAll(rows);
+                        mHasMoreAfter = searchText == null && rows.size() == windowSize;
+                        mHasMoreBefore = searchText == null && first != null;
+                        if (rowsVersion == mRowsVersion) {
+                            diff.dispatchUpdatesTo(BookListAdapter.this);
+                        } else {
+                            // The rows changed while the window was loaded, so the diff is outdated
+                            notifyDataSetChanged();
+                        }
+                        mRowsVersion++;
+                        loadAroundScrollPosition();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Load the next or previous page if the visible books are close to the edge of the window
+     */
+    private void loadAroundScrollPosition() {
+        if (mLoading || mRecyclerView == null || mRows.isEmpty()) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) mRecyclerView.getLayoutManager();
+        int firstVisible = layoutManager.findFirstVisibleItemPosition();
+        int lastVisible = layoutManager.findLastVisibleItemPosition();
+        if (firstVisible == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        if (mHasMoreAfter && lastVisible >= mRows.size() - PREFETCH_DISTANCE) {
+            loadPage(mRows.get(mRows.size() - 1).book, true);
+        } else if (mHasMoreBefore && firstVisible <= PREFETCH_DISTANCE) {
+            loadPage(mRows.get(0).book, false);
+        }
+    }
+
+    private void loadPage(final BookSummary anchor, final boolean after) {
+        final int generation = mGeneration;
+        final BookPageSource pageSource = mPageSource;
+        mLoading = true;
+
+        sLoadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<BookRow> page = toRows(after
+                        ? pageSource.loadAfter(anchor, PAGE_SIZE)
+                        : pageSource.loadBefore(anchor, PAGE_SIZE));
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        mLoading = false;
+                        if (after) {
+                            appendPage(page);
+                        } else {
+                            prependPage(page);
+                        }
+                        loadAroundScrollPosition();
+                    }
+                });
+            }
+        });
+    }
+
+    private void appendPage(List<BookRow> page) {
+        mHasMoreAfter = page.size() == PAGE_SIZE;
+        int start = mRows.size();
+        mRows.addAll(page);
+        mRowsVersion++;
+        notifyItemRangeInserted(start, page.size());
+
+        // Drop the books that are furthest behind the scroll position
+        int excess = mRows.size() - MAX_WINDOW_SIZE;
+        if (excess > 0) {
+            mRows.subList(0, excess).clear();
+            notifyItemRangeRemoved(0, excess);
+            mHasMoreBefore = true;
+        }
+    }
+
+    private void prependPage(List<BookRow> page) {
+        mHasMoreBefore = page.size() == PAGE_SIZE;
+        mRows.addAll(0, page);
+        mRowsVersion++;
+        notifyItemRangeInserted(0, page.size());
+
+        // Drop the books that are furthest ahead of the scroll position
+        int excess = mRows.size() - MAX_WINDOW_SIZE;
+        if (excess > 0) {
+            mRows.subList(mRows.size() - excess, mRows.size()).clear();
+            notifyItemRangeRemoved(mRows.size(), excess);
+            mHasMoreAfter = true;
+        }
+    }
+
+    /**
+     * Format the texts of the given books, so they are ready to be bound
+     */
+    private List<BookRow> toRows(List<BookSummary> books) {
+        List<BookRow> rows = new ArrayList<>(books.size());
+        // NumberFormat is not thread-safe, but is shared by the load thread and tests
+        synchronized (mCurrencyFormatter) {
+            for (BookSummary book : books) {
+                rows.add(new BookRow(book,
+                        Money.format(book.getPrice(), mCurrencyFormatter),
+                        String.valueOf(book.getQuantity())));
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public int getItemCount() {
+        return mRows.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mRows.get(position).book.getId();
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(mContext).inflate(R.layout.list_item, parent, false);
+        ViewHolder holder = new ViewHolder(view);
+
+        // Open the book when the row is clicked on and sell one copy when the "Sale" button is
+        holder.itemView.setTag(holder);
+        holder.itemView.setOnClickListener(mItemClickListener);
+        holder.saleButton.setTag(holder);
+        holder.saleButton.setOnClickListener(mSaleClickListener);
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        BookRow row = mRows.get(position);
+
+        //Set the corresponding TextViews
+        holder.nameView.setText(row.book.getProductName());
+        holder.priceView.setText(row.priceText);
+        holder.quantityView.setText(row.quantityText);
+
+        //Set quantity to red in case it is zero or otherwise to its default color
+        holder.quantityView.setTextColor(row.book.getQuantity() == 0 ? mEmptyStockColor : mInStockColor);
+    }
+
+    /**
+     * A book in the list together with its formatted texts
+     */
+    private static final class BookRow {
+        final BookSummary book;
+        final String priceText;
+        final String quantityText;
+
+        BookRow(BookSummary book, String priceText, String quantityText) {
+            this.book = book;
+            this.priceText = priceText;
+            this.quantityText = quantityText;
+        }
+    }
+
+    /**
+     * Compares two versions of the window. Rows are the same if they show the same book and
+     * have the same contents if the book looks the same in the list.
+     */
+    private static final class RowDiffCallback extends DiffUtil.Callback {
+        private final List<BookRow> mOldRows;
+        private final List<BookRow> mNewRows;
+
+        RowDiffCallback(List<BookRow> oldRows, List<BookRow> newRows) {
+            mOldRows = oldRows;
+            mNewRows = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldRows.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewRows.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldRows.get(oldItemPosition).book.getId() == mNewRows.get(newItemPosition).book.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            BookSummary oldBook = mOldRows.get(oldItemPosition).book;
+            BookSummary newBook = mNewRows.get(newItemPosition).book;
+            return oldBook.getProductName().equals(newBook.getProductName())
+                    && oldBook.getPrice() == newBook.getPrice()
+                    && oldBook.getQuantity() == newBook.getQuantity();
+        }
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        @BindView(R.id.book_name) TextView nameView;
+        @BindView(R.id.book_price) TextView priceView;
+        @BindView(R.id.book_quantity) TextView quantityView;
+        @BindView(R.id.sale_button) Button saleButton;
+
+        ViewHolder(View view) {
+            super(view);
+            ButterKnife.bind(this, view);
+        }
+    }
+}
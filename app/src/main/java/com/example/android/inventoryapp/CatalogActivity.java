@@ -2,45 +2,163 @@ package com.example.android.inventoryapp;
 
 import android.app.AlertDialog;
 import android.app.LoaderManager;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
+import android.database.ContentObserver;
 import android.database.Cursor;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.design.widget.FloatingActionButton;
+import android.support.design.widget.Snackbar;
+import android.support.v4.content.ContextCompat;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.SearchView;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookContract.StatsEntry;
+import com.example.android.inventoryapp.data.BookCsvExporter;
+import com.example.android.inventoryapp.data.BookCsvImporter;
+import com.example.android.inventoryapp.data.BookWriteExecutor;
+import com.example.android.inventoryapp.data.Money;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 public class CatalogActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
 
-    private static final int BOOK_LOADER = 0;
-    private BookCursorAdapter mAdapter;
+    private static final String LOG_TAG = CatalogActivity.class.getSimpleName();
+
+    private static final int STATS_LOADER = 0;
+    private static final int REQUEST_IMPORT_CSV = 1;
+
+    /**
+     * Maximum number of skipped lines listed after an import
+     */
+    private static final int MAX_SHOWN_IMPORT_ERRORS = 5;
+
+    /**
+     * Background thread for exports, which only read the catalog and therefore do not hold up
+     * the writes of {@link BookWriteExecutor}
+     */
+    private static final Executor sExportExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Keys of the sort order and filter of the list in the saved instance state
+     */
+    private static final String STATE_SORT = "sort";
+    private static final String STATE_IN_STOCK_ONLY = "inStockOnly";
+
+    private BookListAdapter mAdapter;
+    private View mEmptyView;
+    private TextView mStatsView;
+
+    /**
+     * Sort order of the list, see {@link BookEntry#QUERY_PARAMETER_SORT}
+     */
+    private String mSort = BookEntry.SORT_NAME;
+    private boolean mInStockOnly = false;
+
+    /**
+     * Set when the books changed while the activity was stopped, so the list is reloaded when it
+     * becomes visible again
+     */
+    private boolean mBooksChanged = false;
+    private boolean mStarted = false;
+
+    /**
+     * Observes all book URIs and updates the changed books in the list
+     */
+    private final ContentObserver mBookObserver = new ContentObserver(new Handler()) {
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            if (mStarted) {
+                mAdapter.onBooksChanged(uri);
+            } else {
+                mBooksChanged = true;
+            }
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_catalog);
 
-        // Find the ListView which will be populated with the data
-        ListView bookListView = findViewById(R.id.list_view_books);
+        // Find the RecyclerView which will be populated with the data
+        RecyclerView bookListView = findViewById(R.id.list_view_books);
+        bookListView.setLayoutManager(new LinearLayoutManager(this));
+        DividerItemDecoration divider = new DividerItemDecoration(this, DividerItemDecoration.VERTICAL);
+        divider.setDrawable(ContextCompat.getDrawable(this, R.drawable.list_divider));
+        bookListView.addItemDecoration(divider);
 
-        //Create a new CursorAdapter and link it to the list view
-        mAdapter = new BookCursorAdapter(this, null);
+        //Create a new adapter that pages through the catalog and link it to the list view.
+        //Open the DetailsActivity when a book in the list is clicked on
+        mAdapter = new BookListAdapter(this, new BookListAdapter.OnBookClickListener() {
+            @Override
+            public void onBookClick(long id) {
+                Intent intent = new Intent(CatalogActivity.this, DetailsActivity.class);
+                intent.setData(ContentUris.withAppendedId(BookEntry.CONTENT_URI, id));
+                startActivity(intent);
+            }
+        });
         bookListView.setAdapter(mAdapter);
 
-        // Find and set empty view on the ListView, so that it only shows when the list has 0 items.
-        View emptyView = findViewById(R.id.empty_view);
-        bookListView.setEmptyView(emptyView);
+        // Find the empty view and only show it when the list has 0 items.
+        mEmptyView = findViewById(R.id.empty_view);
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+        });
 
         // Setup FAB to open EditorActivity
         FloatingActionButton fab = findViewById(R.id.fab);
@@ -52,17 +170,83 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
             }
         });
 
-        //Open the EditorActivity when a book in the list is clicked on
-        bookListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
-            @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-                Intent intent = new Intent(CatalogActivity.this, DetailsActivity.class);
-                intent.setData(ContentUris.withAppendedId(BookEntry.CONTENT_URI, id));
-                startActivity(intent);
-            }
-        });
+        if (savedInstanceState != null) {
+            mSort = savedInstanceState.getString(STATE_SORT, BookEntry.SORT_NAME);
+            mInStockOnly = savedInstanceState.getBoolean(STATE_IN_STOCK_ONLY);
+        }
 
-        getLoaderManager().initLoader(BOOK_LOADER, null, this);
+        getContentResolver().registerContentObserver(BookEntry.CONTENT_URI, true, mBookObserver);
+        mAdapter.setSortOrder(mSort, mInStockOnly);
+
+        // Show the summary of the inventory above the list
+        mStatsView = findViewById(R.id.stats_header);
+        getLoaderManager().initLoader(STATS_LOADER, null, this);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        mStarted = true;
+        if (mBooksChanged) {
+            mBooksChanged = false;
+            mAdapter.reload();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        mStarted = false;
+        super.onStop();
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_SORT, mSort);
+        outState.putBoolean(STATE_IN_STOCK_ONLY, mInStockOnly);
+    }
+
+    @Override
+    protected void onDestroy() {
+        getContentResolver().unregisterContentObserver(mBookObserver);
+        super.onDestroy();
+    }
+
+    /**
+     * Show the empty view only if there are no books in the list
+     */
+    private void updateEmptyView() {
+        mEmptyView.setVisibility(mAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
+
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        String[] projection = {
+                StatsEntry.COLUMN_BOOK_COUNT,
+                StatsEntry.COLUMN_TOTAL_UNITS,
+                StatsEntry.COLUMN_STOCK_VALUE,
+                StatsEntry.COLUMN_OUT_OF_STOCK_COUNT};
+        return new CursorLoader(this, StatsEntry.CONTENT_URI, projection, null, null, null);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+        if (cursor == null || !cursor.moveToFirst() || cursor.getInt(0) == 0) {
+            mStatsView.setVisibility(View.GONE);
+            return;
+        }
+        NumberFormat currencyFormatter = NumberFormat.getCurrencyInstance(Locale.getDefault());
+        mStatsView.setText(getString(R.string.stats_header,
+                cursor.getInt(0),
+                cursor.getLong(1),
+                Money.format(cursor.getLong(2), currencyFormatter),
+                cursor.getInt(3)));
+        mStatsView.setVisibility(View.VISIBLE);
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        mStatsView.setVisibility(View.GONE);
     }
 
     @Override
@@ -70,9 +254,53 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         // Inflate the menu options from the res/menu/menu_catalog.xml file.
         // This adds menu items to the app bar.
         getMenuInflater().inflate(R.menu.menu_catalog, menu);
+
+        // Search the catalog while the user is typing
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                mAdapter.setSearchText(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                mAdapter.setSearchText(newText);
+                return true;
+            }
+        });
+
+        // Check the current sort order and filter
+        menu.findItem(getSortMenuItemId(mSort)).setChecked(true);
+        menu.findItem(R.id.action_in_stock_only).setChecked(mInStockOnly);
         return true;
     }
 
+    private static int getSortMenuItemId(String sort) {
+        switch (sort) {
+            case BookEntry.SORT_PRICE:
+                return R.id.action_sort_price;
+            case BookEntry.SORT_QUANTITY:
+                return R.id.action_sort_quantity;
+            case BookEntry.SORT_CHANGED:
+                return R.id.action_sort_changed;
+            default:
+                return R.id.action_sort_name;
+        }
+    }
+
+    /**
+     * Sort and filter the list. The provider reads the books in the new order straight from the
+     * index of the sort column.
+     */
+    private void setSortOrder(String sort, boolean inStockOnly) {
+        mSort = sort;
+        mInStockOnly = inStockOnly;
+        mAdapter.setSortOrder(sort, inStockOnly);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         // User clicked on a menu option in the app bar overflow menu
@@ -81,6 +309,37 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
             case R.id.action_insert_dummy_data:
                 insertDummyData();
                 return true;
+            // Change the sort order or the filter of the list
+            case R.id.action_sort_name:
+                item.setChecked(true);
+                setSortOrder(BookEntry.SORT_NAME, mInStockOnly);
+                return true;
+            case R.id.action_sort_price:
+                item.setChecked(true);
+                setSortOrder(BookEntry.SORT_PRICE, mInStockOnly);
+                return true;
+            case R.id.action_sort_quantity:
+                item.setChecked(true);
+                setSortOrder(BookEntry.SORT_QUANTITY, mInStockOnly);
+                return true;
+            case R.id.action_sort_changed:
+                item.setChecked(true);
+                setSortOrder(BookEntry.SORT_CHANGED, mInStockOnly);
+                return true;
+            case R.id.action_in_stock_only:
+                item.setChecked(!mInStockOnly);
+                setSortOrder(mSort, !mInStockOnly);
+                return true;
+            // Let the user pick a CSV file to import
+            case R.id.action_import_csv:
+                Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+                intent.setType("text/*");
+                intent.addCategory(Intent.CATEGORY_OPENABLE);
+                startActivityForResult(intent, REQUEST_IMPORT_CSV);
+                return true;
+            case R.id.action_export_csv:
+                exportCsv();
+                return true;
             // Respond to a click on the "Delete all entries" menu option
             case R.id.action_delete_all_entries:
                 showDeleteConfirmationDialog();
@@ -89,6 +348,155 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         return super.onOptionsItemSelected(item);
     }
 
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (requestCode == REQUEST_IMPORT_CSV) {
+            if (resultCode == RESULT_OK && data != null && data.getData() != null) {
+                importCsv(data.getData());
+            }
+            return;
+        }
+        super.onActivityResult(requestCode, resultCode, data);
+    }
+
+    /**
+     * Import the books of the given CSV file in the background while showing the progress
+     */
+    private void importCsv(final Uri fileUri) {
+        final ContentResolver contentResolver = getContentResolver();
+        final Snackbar progressBar = Snackbar.make(findViewById(R.id.list_view_books),
+                R.string.import_started, Snackbar.LENGTH_INDEFINITE);
+        progressBar.show();
+
+        final BookCsvImporter.ProgressListener progressListener = new BookCsvImporter.ProgressListener() {
+            @Override
+            public void onProgress(int linesRead, final int booksImported) {
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        progressBar.setText(getString(R.string.import_progress, booksImported));
+                    }
+                });
+            }
+        };
+
+        BookWriteExecutor.submit(new Callable<BookCsvImporter.Result>() {
+            @Override
+            public BookCsvImporter.Result call() throws IOException {
+                InputStream input = contentResolver.openInputStream(fileUri);
+                if (input == null) {
+                    throw new IOException("Cannot open " + fileUri);
+                }
+                Reader reader = new InputStreamReader(input, "UTF-8");
+                try {
+                    return new BookCsvImporter(contentResolver).importBooks(reader, progressListener);
+                } finally {
+                    reader.close();
+                }
+            }
+        }, new BookWriteExecutor.Callback<BookCsvImporter.Result>() {
+            @Override
+            public void onComplete(BookCsvImporter.Result result) {
+                progressBar.dismiss();
+                if (result == null) {
+                    Toast.makeText(CatalogActivity.this, getString(R.string.import_failed),
+                            Toast.LENGTH_SHORT).show();
+                } else if (!isFinishing()) {
+                    showImportResult(result);
+                }
+            }
+        });
+    }
+
+    /**
+     * Show how many books were imported and the first lines that had to be skipped
+     */
+    private void showImportResult(BookCsvImporter.Result result) {
+        StringBuilder message = new StringBuilder(getString(R.string.import_result,
+                result.getImportedCount(), result.getErrorCount()));
+        List<BookCsvImporter.LineError> errors = result.getErrors();
+        for (int i = 0; i < errors.size() && i < MAX_SHOWN_IMPORT_ERRORS; i++) {
+            message.append('\n').append(getString(R.string.import_error_line,
+                    errors.get(i).getLineNumber(), errors.get(i).getMessage()));
+        }
+
+        new AlertDialog.Builder(this)
+                .setMessage(message)
+                .setPositiveButton(android.R.string.ok, null)
+                .show();
+    }
+
+    /**
+     * Export all books into a new CSV file in the app's external files directory. The export
+     * starts after all pending writes, so it contains their changes, but runs on its own thread,
+     * so writes submitted while it reads the catalog do not wait for it.
+     */
+    private void exportCsv() {
+        final Context context = getApplicationContext();
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        sExportExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File file = null;
+                try {
+                    awaitPendingWrites();
+                    file = writeCsvFile(context);
+                } catch (Exception e) {
+                    // Like a failed write, a failed export is logged and reported as null
+                    Log.e(LOG_TAG, "Export failed", e);
+                }
+                final File exportedFile = file;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (exportedFile != null) {
+                            Toast.makeText(context, context.getString(R.string.export_successful,
+                                    exportedFile.getAbsolutePath()), Toast.LENGTH_LONG).show();
+                        } else {
+                            Toast.makeText(context, context.getString(R.string.export_failed),
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Wait on the export thread until the writes submitted so far are done
+     */
+    private static void awaitPendingWrites() throws InterruptedException, ExecutionException {
+        BookWriteExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                return null;
+            }
+        }, null).get();
+    }
+
+    /**
+     * Write all books into a new CSV file
+     *
+     * @return the file
+     */
+    private static File writeCsvFile(Context context) throws IOException {
+        File directory = context.getExternalFilesDir(null);
+        if (directory == null) {
+            throw new IOException("External storage is not available");
+        }
+        String fileName = "books-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US)
+                .format(new Date()) + ".csv";
+        File file = new File(directory, fileName);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), "UTF-8"));
+        try {
+            new BookCsvExporter(context.getContentResolver()).exportBooks(writer);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
     /**
      * Inserts (dummy) data entry into the DB
      */
@@ -96,7 +504,7 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
 
         //Dummy Data
         String bookName = "The Bible";
-        float price = 12.99f;
+        long price = 1299;
         int quantity = 0;
         String supplier = "The Pope";
         String supplierPhone = "+39 06 6982";
@@ -109,12 +517,11 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         values.put(BookEntry.COLUMN_SUPPLIER_NAME, supplier);
         values.put(BookEntry.COLUMN_SUPPLIER_PHONE, supplierPhone);
 
-        //write book defined in values into database
-        getContentResolver().insert(BookEntry.CONTENT_URI, values);
+        ContentValues firstBook = values;
 
         //Dummy Data 2
         bookName = "The Bible 2 - Return of Christ";
-        price = 29.99f;
+        price = 2999;
         quantity = 42;
 
         //Insert dummy data into ContentValues
@@ -125,8 +532,9 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         values.put(BookEntry.COLUMN_SUPPLIER_NAME, supplier);
         values.put(BookEntry.COLUMN_SUPPLIER_PHONE, supplierPhone);
 
-        //write book defined in values into database
-        getContentResolver().insert(BookEntry.CONTENT_URI, values);
+        //write both books into the database in the background
+        BookWriteExecutor.bulkInsert(getContentResolver(), BookEntry.CONTENT_URI,
+                new ContentValues[]{firstBook, values}, null);
     }
 
     /**
@@ -162,42 +570,18 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
      */
     private void deleteAllBooks() {
         //delete all books, pass "1" as a WhereClause to get a count of all deleted rows
-        int rowsDeleted = getContentResolver().delete(BookEntry.CONTENT_URI, "1", null);
-        if (rowsDeleted > 1) {
-            Toast.makeText(this, getString(R.string.delete_all_successful),
-                    Toast.LENGTH_SHORT).show();
-        } else {
-            Toast.makeText(this, getString(R.string.delete_all_not_successful),
-                    Toast.LENGTH_SHORT).show();
-        }
-    }
-
-
-    @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        // Define a projection that specifies which columns from the database
-        // you will actually use after this query.
-        String[] projection = {
-                BookEntry._ID,
-                BookEntry.COLUMN_PRODUCT_NAME,
-                BookEntry.COLUMN_PRICE,
-                BookEntry.COLUMN_QUANTITY};
-
-        return new CursorLoader(this,
-                BookEntry.CONTENT_URI,
-                projection,
-                null,
-                null,
-                null);
-    }
-
-    @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        mAdapter.swapCursor(data);
-    }
-
-    @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        mAdapter.swapCursor(null);
+        BookWriteExecutor.delete(getContentResolver(), BookEntry.CONTENT_URI, "1", null,
+                new BookWriteExecutor.Callback<Integer>() {
+                    @Override
+                    public void onComplete(Integer rowsDeleted) {
+                        if (rowsDeleted != null && rowsDeleted > 1) {
+                            Toast.makeText(CatalogActivity.this, getString(R.string.delete_all_successful),
+                                    Toast.LENGTH_SHORT).show();
+                        } else {
+                            Toast.makeText(CatalogActivity.this, getString(R.string.delete_all_not_successful),
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
     }
 }
@@ -2,14 +2,14 @@ package com.example.android.inventoryapp;
 
 import android.app.AlertDialog;
 import android.app.LoaderManager;
-import android.content.ContentValues;
-import android.content.CursorLoader;
+import android.content.ContentUris;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.annotation.Nullable;
 import android.support.v7.app.AppCompatActivity;
 import android.text.method.LinkMovementMethod;
@@ -21,7 +21,10 @@ import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.Book;
+import com.example.android.inventoryapp.data.BookLoader;
+import com.example.android.inventoryapp.data.BookWriteExecutor;
+import com.example.android.inventoryapp.data.Money;
 
 import java.text.NumberFormat;
 import java.util.Locale;
@@ -29,9 +32,10 @@ import java.util.Locale;
 import butterknife.BindView;
 import butterknife.ButterKnife;
 
-public class DetailsActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+public class DetailsActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Book> {
 
     private static final int BOOK_LOADER = 0;
+    private static final String STATE_PENDING_QUANTITY_DELTA = "pendingQuantityDelta";
     @BindView(R.id.details_book_name)
     TextView bookNameView;
     @BindView(R.id.details_price)
@@ -45,6 +49,34 @@ public class DetailsActivity extends AppCompatActivity implements LoaderManager.
     private Uri mBookUri;
     private int mCurrentQuantity = -1;
 
+    /**
+     * Quantity of the book in the database, as far as known
+     */
+    private int mStoredQuantity = -1;
+
+    /**
+     * Quantity changes that are shown but not yet written to the database
+     */
+    private int mPendingQuantityDelta = 0;
+
+    /**
+     * Quantity changes that are currently written to the database
+     */
+    private int mWritingQuantityDelta = 0;
+    private long mQuantityFlushDelay;
+    /**
+     * True once the activity was destroyed, so writes that finish later skip updating its views.
+     * Activity.isDestroyed() requires API 17.
+     */
+    private boolean mDestroyed = false;
+    private final Handler mHandler = new Handler();
+    private final Runnable mFlushQuantityRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushQuantity();
+        }
+    };
+
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -53,39 +85,113 @@ public class DetailsActivity extends AppCompatActivity implements LoaderManager.
 
         Intent intent = getIntent();
         mBookUri = intent.getData();
+        mQuantityFlushDelay = getResources().getInteger(R.integer.quantity_flush_delay_ms);
+
+        //Changes that could not be written before a configuration change are written now
+        if (savedInstanceState != null) {
+            mPendingQuantityDelta = savedInstanceState.getInt(STATE_PENDING_QUANTITY_DELTA);
+            if (mPendingQuantityDelta != 0) {
+                mHandler.postDelayed(mFlushQuantityRunnable, mQuantityFlushDelay);
+            }
+        }
 
         getLoaderManager().initLoader(BOOK_LOADER, null, this);
     }
 
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        flushQuantity();
+    }
+
+    @Override
+    protected void onDestroy() {
+        mDestroyed = true;
+        super.onDestroy();
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(STATE_PENDING_QUANTITY_DELTA, mPendingQuantityDelta);
+    }
+
     /**
-     * increase/decrease the quantity of the current book when the plus/minus buttons are pressed
+     * increase/decrease the quantity of the current book when the plus/minus buttons are pressed.
+     * The new quantity is shown right away, but only written to the database once no button was
+     * pressed for a moment, so a series of taps results in a single write.
      */
     public void quantityChange(View v) {
         if (mCurrentQuantity > -1) {
+            int delta;
             switch (v.getId()) {
                 case R.id.plus_button:
-                    mCurrentQuantity++;
+                    delta = 1;
                     break;
                 case R.id.minus_button:
                     if (mCurrentQuantity > 0) {
-                        mCurrentQuantity--;
+                        delta = -1;
                         break;
                     } else
                         return;
+                default:
+                    return;
             }
-            ContentValues values = new ContentValues();
-            values.put(BookEntry.COLUMN_QUANTITY, mCurrentQuantity);
-
-            //Update the current book with the reduced quantity
-            v.getContext().getContentResolver().update(
-                    mBookUri,
-                    values,
-                    null,
-                    null
-            );
-            quantityView.setText(String.valueOf(mCurrentQuantity));
+            mPendingQuantityDelta += delta;
+            showQuantity();
+
+            //Restart the idle period
+            mHandler.removeCallbacks(mFlushQuantityRunnable);
+            mHandler.postDelayed(mFlushQuantityRunnable, mQuantityFlushDelay);
+        }
+    }
+
+    /**
+     * Write the pending quantity changes of the current book to the database
+     */
+    private void flushQuantity() {
+        mHandler.removeCallbacks(mFlushQuantityRunnable);
+        if (mPendingQuantityDelta == 0) {
+            return;
         }
+        final int delta = mPendingQuantityDelta;
+        mPendingQuantityDelta = 0;
+        mWritingQuantityDelta += delta;
+
+        //Let the provider change the quantity of the current book in a single statement.
+        //This runs after onPause, so the result may arrive after the activity was destroyed.
+        final Context context = getApplicationContext();
+        BookWriteExecutor.adjustQuantity(getContentResolver(), ContentUris.parseId(mBookUri), delta,
+                new BookWriteExecutor.Callback<Integer>() {
+                    @Override
+                    public void onComplete(Integer quantity) {
+                        if (quantity == null) {
+                            //The book was deleted or its quantity would have become negative
+                            Toast.makeText(context, context.getString(R.string.update_quantity_failed),
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                        if (mDestroyed) {
+                            return;
+                        }
+                        mWritingQuantityDelta -= delta;
+                        if (quantity != null) {
+                            mStoredQuantity = quantity;
+                        }
+                        showQuantity();
+                    }
+                });
+    }
+
+    /**
+     * Show the stored quantity including all pending changes
+     */
+    private void showQuantity() {
+        if (mStoredQuantity < 0) {
+            return;
+        }
+        mCurrentQuantity = mStoredQuantity + mWritingQuantityDelta + mPendingQuantityDelta;
+        quantityView.setText(String.valueOf(mCurrentQuantity));
     }
 
     @Override
@@ -147,55 +253,53 @@ public class DetailsActivity extends AppCompatActivity implements LoaderManager.
      * Perform the deletion of the book in the database.
      */
     private void deleteBook() {
-        int rowsDeleted = getContentResolver().delete(mBookUri, null, null);
-        if (rowsDeleted == 1) {
-            Toast.makeText(this, getString(R.string.delete_book_successful),
-                    Toast.LENGTH_SHORT).show();
-        } else {
-            Toast.makeText(this, getString(R.string.delete_book_not_successful),
-                    Toast.LENGTH_SHORT).show();
-        }
+        //Quantity changes of a deleted book don't need to be written anymore
+        mHandler.removeCallbacks(mFlushQuantityRunnable);
+        mPendingQuantityDelta = 0;
+
+        final Context context = getApplicationContext();
+        BookWriteExecutor.delete(getContentResolver(), mBookUri, null, null,
+                new BookWriteExecutor.Callback<Integer>() {
+                    @Override
+                    public void onComplete(Integer rowsDeleted) {
+                        if (rowsDeleted != null && rowsDeleted == 1) {
+                            Toast.makeText(context, context.getString(R.string.delete_book_successful),
+                                    Toast.LENGTH_SHORT).show();
+                        } else {
+                            Toast.makeText(context, context.getString(R.string.delete_book_not_successful),
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
         finish();
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        return new CursorLoader(this,
-                mBookUri,
-                null,
-                null,
-                null,
-                null);
+    public Loader<Book> onCreateLoader(int id, Bundle args) {
+        //Recently viewed books are delivered from the cache without a database access
+        return new BookLoader(this, ContentUris.parseId(mBookUri));
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+    public void onLoadFinished(Loader<Book> loader, Book book) {
 
-        if (cursor == null || !cursor.moveToFirst())
+        if (book == null)
             return;
 
-        // Figure out the index of each column
-        int nameColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_NAME);
-        int priceColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRICE);
-        int quantityColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_QUANTITY);
-        int supplierNameColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_SUPPLIER_NAME);
-        int supplierPhoneColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_SUPPLIER_PHONE);
-
-        //Read out the values from the cursor
-        String bookName = cursor.getString(nameColumnIndex);
-        float bookPrice = cursor.getFloat(priceColumnIndex);
-        int bookQuantity = cursor.getInt(quantityColumnIndex);
-        String supplierName = cursor.getString(supplierNameColumnIndex);
-        String supplierPhone = cursor.getString(supplierPhoneColumnIndex);
+        String bookName = book.getProductName();
+        long bookPrice = book.getPrice();
+        int bookQuantity = book.getQuantity();
+        String supplierName = book.getSupplierName();
+        String supplierPhone = book.getSupplierPhone();
 
-        mCurrentQuantity = bookQuantity;
+        mStoredQuantity = bookQuantity;
 
         //Get the format for the user's local currency
         NumberFormat currencyFormatter = NumberFormat.getCurrencyInstance(Locale.getDefault());
 
         bookNameView.setText(bookName);
-        bookPriceView.setText(currencyFormatter.format(bookPrice));
-        quantityView.setText(String.valueOf(bookQuantity));
+        bookPriceView.setText(Money.format(bookPrice, currencyFormatter));
+        showQuantity();
         supplierNameView.setText(supplierName);
         supplierPhoneView.setText(supplierPhone);
 
@@ -207,6 +311,6 @@ public class DetailsActivity extends AppCompatActivity implements LoaderManager.
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
+    public void onLoaderReset(Loader<Book> loader) {
     }
 }
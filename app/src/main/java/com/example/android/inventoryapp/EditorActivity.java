@@ -2,15 +2,17 @@ package com.example.android.inventoryapp;
 
 import android.app.AlertDialog;
 import android.app.LoaderManager;
+import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
-import android.content.CursorLoader;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
+import android.support.annotation.StringRes;
 import android.support.v4.app.NavUtils;
 import android.support.v7.app.AppCompatActivity;
 import android.text.TextUtils;
@@ -22,15 +24,21 @@ import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.android.inventoryapp.data.Book;
 import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookLoader;
+import com.example.android.inventoryapp.data.BookRepository;
+import com.example.android.inventoryapp.data.BookWriteExecutor;
+import com.example.android.inventoryapp.data.Money;
 
 import java.util.Currency;
 import java.util.Locale;
+import java.util.concurrent.Callable;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
 
-public class EditorActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+public class EditorActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Book> {
 
     private static final int BOOK_LOADER = 0;
 
@@ -48,12 +56,18 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     EditText supplierPhoneEditText;
 
     private Uri mBookUri;
+    /**
+     * The book as it was loaded into the editor. The changes of the user are the differences
+     * to this book, so changes that others made in the meantime can be merged with them.
+     */
+    private Book mBook;
 
     /**
      * OnTouchListener that listens for any user clicks on an EditText, implying that they are modifying
      * // the view, setting mBookHasChanged to true
      */
     private boolean mBookHasChanged = false;
+    private boolean mSaving = false;
     private View.OnTouchListener mTouchListener = new View.OnTouchListener() {
         @Override
         public boolean onTouch(View view, MotionEvent motionEvent) {
@@ -118,9 +132,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         switch (item.getItemId()) {
             // Respond to a click on the "Save" menu option
             case R.id.action_save:
-                boolean saved = saveBook();
-                if (saved)
-                    finish();
+                saveBook();
                 return true;
             // Respond to a click on the "Delete" menu option
             case R.id.action_delete_editor:
@@ -242,11 +254,15 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     }
 
     /**
-     * save any changes for the new book or update the existing one
-     *
-     * @return true if the book was successfully saved or false otherwise
+     * save any changes for the new book or update the existing one in the background and
+     * finish the activity once the book was successfully saved
      */
-    private boolean saveBook() {
+    private void saveBook() {
+        //ignore further clicks while the book is saved
+        if (mSaving) {
+            return;
+        }
+
         //read out all EditText fields
         String bookNameText = bookNameEditText.getText().toString();
         String bookPriceText = bookPriceEditText.getText().toString();
@@ -258,7 +274,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         if (TextUtils.isEmpty(bookNameText) && TextUtils.isEmpty(bookPriceText) && TextUtils.isEmpty(bookQuantityText) &&
                 TextUtils.isEmpty(supplierNameText) && TextUtils.isEmpty(supplierPhoneText)) {
             finish();
-            return false;
+            return;
         }
 
         //Check if all required fields are filled out and fill ContentValues accordingly
@@ -266,17 +282,17 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         if (TextUtils.isEmpty(bookNameText)) {
             Toast.makeText(this, getString(R.string.no_valid_book_name),
                     Toast.LENGTH_SHORT).show();
-            return false;
+            return;
         }
         if (TextUtils.isEmpty(supplierNameText)) {
             Toast.makeText(this, getString(R.string.no_valid_supplier_name),
                     Toast.LENGTH_SHORT).show();
-            return false;
+            return;
         }
         if (TextUtils.isEmpty(supplierPhoneText)) {
             Toast.makeText(this, getString(R.string.no_valid_supplier_phone),
                     Toast.LENGTH_SHORT).show();
-            return false;
+            return;
         }
         ContentValues values = new ContentValues();
         values.put(BookEntry.COLUMN_PRODUCT_NAME, bookNameText.trim());
@@ -287,12 +303,12 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         // if we are updating a book, we just don't change the corresponding value if the field is empty
         if (!TextUtils.isEmpty(bookPriceText)) {
             try {
-                float bookPriceFloat = Float.parseFloat(bookPriceText.trim());
-                values.put(BookEntry.COLUMN_PRICE, bookPriceFloat);
+                long bookPriceCents = Money.parse(bookPriceText);
+                values.put(BookEntry.COLUMN_PRICE, bookPriceCents);
             } catch (NumberFormatException e) {
                 Toast.makeText(this, getString(R.string.no_valid_price),
                         Toast.LENGTH_SHORT).show();
-                return false;
+                return;
             }
         }
         if (!TextUtils.isEmpty(bookQuantityText)) {
@@ -302,105 +318,231 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
             } catch (NumberFormatException e) {
                 Toast.makeText(this, getString(R.string.no_valid_quantity),
                         Toast.LENGTH_SHORT).show();
-                return false;
+                return;
             }
         }
 
-        // if a new book should be added
+        mSaving = true;
         if (mBookUri == null) {
-            Uri newUri = getContentResolver().insert(BookEntry.CONTENT_URI, values);
+            // if a new book should be added
+            BookWriteExecutor.insert(getContentResolver(), BookEntry.CONTENT_URI, values,
+                    new BookWriteExecutor.Callback<Uri>() {
+                        @Override
+                        public void onComplete(Uri newUri) {
+                            // Show a toast message depending on whether or not the insertion was successful
+                            onSaveComplete(newUri != null,
+                                    R.string.insert_book_successful, R.string.insert_book_failed);
+                        }
+                    });
+        } else if (mBook == null) {
+            // the book has not been loaded yet, so there is nothing to merge the changes with
+            mSaving = false;
+        } else {
+            //otherwise we only write the fields the user changed
+            ContentValues changes = getChangedValues(values, mBook);
+            if (changes.size() == 0) {
+                mSaving = false;
+                finish();
+                return;
+            }
+            updateBook(changes, mBook);
+        }
+    }
 
-            // Show a toast message depending on whether or not the insertion was successful
-            if (newUri == null) {
-                // If the new content URI is null, then there was an error with insertion.
-                Toast.makeText(this, getString(R.string.insert_book_failed),
-                        Toast.LENGTH_SHORT).show();
-                return false;
-            } else {
-                // Otherwise, the insertion was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.insert_book_successful),
-                        Toast.LENGTH_SHORT).show();
-                return true;
+    /**
+     * Write the changes of the user, provided that nobody changed the book since the given
+     * version of it was read. Otherwise the changes are merged with the current version.
+     */
+    private void updateBook(final ContentValues changes, final Book book) {
+        Uri uri = mBookUri.buildUpon()
+                .appendQueryParameter(BookEntry.QUERY_PARAMETER_EXPECTED_VERSION,
+                        String.valueOf(book.getVersion()))
+                .build();
+        BookWriteExecutor.update(getContentResolver(), uri, changes, null, null,
+                new BookWriteExecutor.Callback<Integer>() {
+                    @Override
+                    public void onComplete(Integer updatedRows) {
+                        if (updatedRows != null && updatedRows == 0) {
+                            //the book was changed or deleted in the meantime
+                            mergeChanges(changes, book);
+                        } else {
+                            onSaveComplete(updatedRows != null,
+                                    R.string.update_book_successful, R.string.update_book_failed);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Load the current version of the book and write the changes of the user on top of it.
+     * If the user changed a field that was changed by someone else as well, ask which one to keep.
+     *
+     * @param book the version of the book the changes were made to
+     */
+    private void mergeChanges(final ContentValues changes, final Book book) {
+        final ContentResolver contentResolver = getContentResolver();
+        BookWriteExecutor.submit(new Callable<Book>() {
+            @Override
+            public Book call() {
+                return BookRepository.getBook(contentResolver, book.getId());
             }
-        } else {
-            //otherwise we update the existing book
-            int updatedRows = getContentResolver().update(
-                    mBookUri,
-                    values,
-                    null,
-                    null
-            );
-            if (updatedRows == 0) {
-                Toast.makeText(this, getString(R.string.update_book_failed),
-                        Toast.LENGTH_SHORT).show();
-                return false;
-            } else {
-                Toast.makeText(this, getString(R.string.update_book_successful),
-                        Toast.LENGTH_SHORT).show();
+        }, new BookWriteExecutor.Callback<Book>() {
+            @Override
+            public void onComplete(Book currentBook) {
+                if (currentBook == null) {
+                    //the book was deleted
+                    onSaveComplete(false, R.string.update_book_successful, R.string.update_book_failed);
+                } else if (hasConflicts(changes, book, currentBook)) {
+                    showConflictDialog(changes, currentBook);
+                } else {
+                    updateBook(changes, currentBook);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return true if one of the changed fields has another value in the current book than in
+     * the book the changes were made to, i.e. somebody else changed it as well
+     */
+    private static boolean hasConflicts(ContentValues changes, Book book, Book currentBook) {
+        for (String key : changes.keySet()) {
+            Object currentValue = getValue(currentBook, key);
+            if (!currentValue.equals(getValue(book, key)) && !currentValue.equals(changes.get(key))) {
                 return true;
             }
+        }
+        return false;
+    }
 
+    /**
+     * @return the values that differ from the given book
+     */
+    private static ContentValues getChangedValues(ContentValues values, Book book) {
+        ContentValues changes = new ContentValues(values);
+        for (String key : values.keySet()) {
+            if (values.get(key).equals(getValue(book, key))) {
+                changes.remove(key);
+            }
         }
+        return changes;
     }
 
     /**
-     * Perform the deletion of the book in the database.
+     * @return the value of the given column of the book, with the same type as the editor puts
+     * into its ContentValues
      */
-    private void deleteBook() {
-        int rowsDeleted = getContentResolver().delete(mBookUri, null, null);
-        if (rowsDeleted == 1) {
-            Toast.makeText(this, getString(R.string.delete_book_successful),
-                    Toast.LENGTH_SHORT).show();
+    private static Object getValue(Book book, String key) {
+        switch (key) {
+            case BookEntry.COLUMN_PRODUCT_NAME:
+                return book.getProductName();
+            case BookEntry.COLUMN_PRICE:
+                return book.getPrice();
+            case BookEntry.COLUMN_QUANTITY:
+                return book.getQuantity();
+            case BookEntry.COLUMN_SUPPLIER_NAME:
+                return book.getSupplierName();
+            case BookEntry.COLUMN_SUPPLIER_PHONE:
+                return book.getSupplierPhone();
+            default:
+                throw new IllegalArgumentException("Unknown column " + key);
+        }
+    }
+
+    /**
+     * Ask the user whether to overwrite the changes that somebody else made to the book while it
+     * was edited, or to discard the own changes and continue with the current book
+     */
+    private void showConflictDialog(final ContentValues changes, final Book currentBook) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setMessage(R.string.update_book_conflict_msg);
+        builder.setPositiveButton(R.string.overwrite, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int id) {
+                updateBook(changes, currentBook);
+            }
+        });
+        builder.setNegativeButton(R.string.discard, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int id) {
+                mSaving = false;
+                mBookHasChanged = false;
+                showBook(currentBook);
+            }
+        });
+        builder.setCancelable(false);
+        builder.create().show();
+    }
+
+    /**
+     * Show the result of saving the book and close the editor if it was successful
+     */
+    private void onSaveComplete(boolean successful, @StringRes int successMessageId,
+                                @StringRes int failureMessageId) {
+        mSaving = false;
+        if (successful) {
+            Toast.makeText(this, getString(successMessageId), Toast.LENGTH_SHORT).show();
+            finish();
         } else {
-            Toast.makeText(this, getString(R.string.delete_book_not_successful),
-                    Toast.LENGTH_SHORT).show();
+            Toast.makeText(this, getString(failureMessageId), Toast.LENGTH_SHORT).show();
         }
+    }
+
+    /**
+     * Perform the deletion of the book in the database.
+     */
+    private void deleteBook() {
+        final Context context = getApplicationContext();
+        BookWriteExecutor.delete(getContentResolver(), mBookUri, null, null,
+                new BookWriteExecutor.Callback<Integer>() {
+                    @Override
+                    public void onComplete(Integer rowsDeleted) {
+                        if (rowsDeleted != null && rowsDeleted == 1) {
+                            Toast.makeText(context, context.getString(R.string.delete_book_successful),
+                                    Toast.LENGTH_SHORT).show();
+                        } else {
+                            Toast.makeText(context, context.getString(R.string.delete_book_not_successful),
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
         finish();
     }
 
 
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        return new CursorLoader(this,
-                mBookUri,
-                null,
-                null,
-                null,
-                null);
+    public Loader<Book> onCreateLoader(int id, Bundle args) {
+        //A book that was just shown in the details is delivered from the cache
+        return new BookLoader(this, ContentUris.parseId(mBookUri));
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+    public void onLoadFinished(Loader<Book> loader, Book book) {
 
-        if (cursor == null || !cursor.moveToFirst())
+        if (book == null)
             return;
 
-        // Figure out the index of each column
-        int nameColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_NAME);
-        int priceColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRICE);
-        int quantityColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_QUANTITY);
-        int supplierNameColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_SUPPLIER_NAME);
-        int supplierPhoneColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_SUPPLIER_PHONE);
-
-
-        //Read out the values from the cursor
-        String bookName = cursor.getString(nameColumnIndex);
-        float bookPrice = cursor.getFloat(priceColumnIndex);
-        int bookQuantity = cursor.getInt(quantityColumnIndex);
-        String supplierName = cursor.getString(supplierNameColumnIndex);
-        String supplierPhone = cursor.getString(supplierPhoneColumnIndex);
-
-        bookNameEditText.setText(bookName);
-        bookPriceEditText.setText(String.format(Locale.getDefault(), "%.2f", bookPrice));
-        quantityEditText.setText(String.valueOf(bookQuantity));
-        supplierNameEditText.setText(supplierName);
-        supplierPhoneEditText.setText(supplierPhone);
-
+        //Keep the changes of the user if the book is changed by someone else while it is edited,
+        //they are merged when the book is saved
+        if (mBook != null && mBookHasChanged) {
+            return;
+        }
+        showBook(book);
+    }
 
+    /**
+     * Fill the fields with the given book and edit it from now on
+     */
+    private void showBook(Book book) {
+        mBook = book;
+
+        bookNameEditText.setText(book.getProductName());
+        bookPriceEditText.setText(Money.toPlainString(book.getPrice()));
+        quantityEditText.setText(String.valueOf(book.getQuantity()));
+        supplierNameEditText.setText(book.getSupplierName());
+        supplierPhoneEditText.setText(book.getSupplierPhone());
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
+    public void onLoaderReset(Loader<Book> loader) {
         bookNameEditText.getText().clear();
         bookPriceEditText.getText().clear();
         quantityEditText.getText().clear();
@@ -0,0 +1,93 @@
+package com.example.android.inventoryapp;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.StrictMode;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookContract.StockMovementEntry;
+import com.example.android.inventoryapp.data.BookPageSource;
+import com.example.android.inventoryapp.data.BookWriteExecutor;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+public class InventoryApplication extends Application {
+
+    /**
+     * Stock movements older than this are rolled into snapshots, at most once per interval
+     */
+    private static final long STOCK_MOVEMENT_RETENTION_MS = TimeUnit.DAYS.toMillis(90);
+    private static final long STOCK_COMPACTION_INTERVAL_MS = TimeUnit.DAYS.toMillis(1);
+
+    private static final String PREFERENCES_MAINTENANCE = "maintenance";
+    private static final String KEY_LAST_STOCK_COMPACTION = "lastStockCompaction";
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        //All database access has to happen in the background, so let debug builds crash on any
+        //disk access of the main thread
+        if (BuildConfig.DEBUG) {
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .penaltyLog()
+                    .penaltyDeath()
+                    .build());
+            StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                    .detectLeakedSqlLiteObjects()
+                    .detectLeakedClosableObjects()
+                    .penaltyLog()
+                    .build());
+        }
+
+        warmUpDatabase();
+        compactStockMovementsIfDue();
+    }
+
+    /**
+     * Open the database and run the first query of the catalog in the background, while the
+     * catalog is inflated. The catalog then neither waits for the database to be created or
+     * migrated nor for its query to be compiled, and finds the index pages it reads in the cache.
+     * This is the first task of the write thread, so all writes find the database open.
+     */
+    private void warmUpDatabase() {
+        BookWriteExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                ContentResolver contentResolver = getContentResolver();
+                contentResolver.call(BookEntry.CONTENT_URI, BookEntry.METHOD_WARM_UP, null, null);
+                new BookPageSource(contentResolver).loadFirst(BookListAdapter.PAGE_SIZE);
+                return null;
+            }
+        }, null);
+    }
+
+    /**
+     * Keep the stock ledger small by compacting its old movements once a day. This runs behind
+     * the other writes, so it never delays the start of the app.
+     */
+    private void compactStockMovementsIfDue() {
+        BookWriteExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                SharedPreferences preferences = getSharedPreferences(PREFERENCES_MAINTENANCE, MODE_PRIVATE);
+                long now = System.currentTimeMillis();
+                if (now - preferences.getLong(KEY_LAST_STOCK_COMPACTION, 0) < STOCK_COMPACTION_INTERVAL_MS) {
+                    return null;
+                }
+
+                Bundle extras = new Bundle();
+                extras.putLong(StockMovementEntry.EXTRA_TIME, now - STOCK_MOVEMENT_RETENTION_MS);
+                getContentResolver().call(BookEntry.CONTENT_URI, StockMovementEntry.METHOD_COMPACT,
+                        null, extras);
+                preferences.edit().putLong(KEY_LAST_STOCK_COMPACTION, now).apply();
+                return null;
+            }
+        }, null);
+    }
+}
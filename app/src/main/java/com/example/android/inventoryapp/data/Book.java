@@ -0,0 +1,98 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.Cursor;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+/**
+ * Immutable snapshot of all columns of a book
+ */
+public final class Book {
+
+    /**
+     * Columns that have to be queried to create a Book from a cursor
+     */
+    public static final String[] PROJECTION = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRICE,
+            BookEntry.COLUMN_QUANTITY,
+            BookEntry.COLUMN_SUPPLIER_NAME,
+            BookEntry.COLUMN_SUPPLIER_PHONE,
+            BookEntry.COLUMN_VERSION};
+
+    private static final int INDEX_ID = 0;
+    private static final int INDEX_PRODUCT_NAME = 1;
+    private static final int INDEX_PRICE = 2;
+    private static final int INDEX_QUANTITY = 3;
+    private static final int INDEX_SUPPLIER_NAME = 4;
+    private static final int INDEX_SUPPLIER_PHONE = 5;
+    private static final int INDEX_VERSION = 6;
+
+    private final long mId;
+    private final String mProductName;
+    private final long mPrice;
+    private final int mQuantity;
+    private final String mSupplierName;
+    private final String mSupplierPhone;
+    private final long mVersion;
+
+    public Book(long id, String productName, long price, int quantity,
+                String supplierName, String supplierPhone, long version) {
+        mId = id;
+        mProductName = productName;
+        mPrice = price;
+        mQuantity = quantity;
+        mSupplierName = supplierName;
+        mSupplierPhone = supplierPhone;
+        mVersion = version;
+    }
+
+    /**
+     * Create a Book from the current row of a cursor that was queried with {@link #PROJECTION}
+     */
+    public static Book fromCursor(Cursor cursor) {
+        return new Book(
+                cursor.getLong(INDEX_ID),
+                cursor.getString(INDEX_PRODUCT_NAME),
+                cursor.getLong(INDEX_PRICE),
+                cursor.getInt(INDEX_QUANTITY),
+                cursor.getString(INDEX_SUPPLIER_NAME),
+                cursor.getString(INDEX_SUPPLIER_PHONE),
+                cursor.getLong(INDEX_VERSION));
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public String getProductName() {
+        return mProductName;
+    }
+
+    /**
+     * @return the price in cents, see {@link Money}
+     */
+    public long getPrice() {
+        return mPrice;
+    }
+
+    public int getQuantity() {
+        return mQuantity;
+    }
+
+    public String getSupplierName() {
+        return mSupplierName;
+    }
+
+    public String getSupplierPhone() {
+        return mSupplierPhone;
+    }
+
+    /**
+     * @return the version of the book, see {@link BookEntry#COLUMN_VERSION}
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.android.inventoryapp.data;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
@@ -15,11 +16,31 @@ public final class BookContract {
 
     public static final String PATH_BOOKS = "books";
 
+    public static final String PATH_SEARCH = "search";
+
+    public static final String PATH_STATS = "stats";
+
+    public static final String PATH_SUPPLIERS = "suppliers";
+
+    public static final String PATH_MOVEMENTS = "movements";
+
+    public static final String PATH_ISBN = "isbn";
+
 
     public static abstract class BookEntry implements BaseColumns {
 
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_BOOKS);
 
+        /**
+         * URI to search books by product and supplier name. The text to search for is passed as
+         * the {@link #QUERY_PARAMETER_SEARCH} parameter and every word of it is matched as a prefix.
+         * Books whose name starts with the search text are returned first.
+         * The number of results can be limited with {@link #QUERY_PARAMETER_LIMIT}.
+         */
+        public static final Uri SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
+        public static final String QUERY_PARAMETER_SEARCH = "q";
+
         /**
          * The MIME type of the {@link #CONTENT_URI} for a list of books.
          */
@@ -37,12 +58,307 @@ public final class BookContract {
 
         public static final String _ID = BaseColumns._ID;
         public static final String COLUMN_PRODUCT_NAME = "productName";
+        /**
+         * Price as an integer number of cents, see {@link Money}
+         */
         public static final String COLUMN_PRICE = "price";
         public static final String COLUMN_QUANTITY = "quantity";
+        /**
+         * ID of the supplier of the book, see {@link SupplierEntry}
+         */
+        public static final String COLUMN_SUPPLIER_ID = "supplierId";
+        /**
+         * Time of the last change to the book in milliseconds since the epoch. It is maintained
+         * by the database and cannot be written.
+         */
+        public static final String COLUMN_LAST_MODIFIED = "lastModified";
+        /**
+         * Number of updates of the book. It is maintained by the database and cannot be written,
+         * but can be passed as {@link #QUERY_PARAMETER_EXPECTED_VERSION} to update the book only
+         * if nobody else changed it in the meantime.
+         */
+        public static final String COLUMN_VERSION = "version";
+        /**
+         * ISBN of the book as the 13 digits of its barcode, or null if it has none. An ISBN-10 or
+         * an ISBN with hyphens is converted when it is written, see {@link Isbn}. Each ISBN can
+         * only belong to one book: inserting a second book with it fails, and updating a book to
+         * it throws an {@link IllegalArgumentException}.
+         */
+        public static final String COLUMN_ISBN = "isbn";
+        /**
+         * Name and phone number of the supplier. They are stored once per supplier in the
+         * suppliers table, but can be queried and written like columns of the book. Writing them
+         * selects the supplier with that name, adding it if it does not exist yet, and changes
+         * the phone number of the supplier for all of its books.
+         */
         public static final String COLUMN_SUPPLIER_NAME = "supplierName";
         public static final String COLUMN_SUPPLIER_PHONE = "supplierPhoneNumber";
 
+        /**
+         * Provider method that atomically adds {@link #EXTRA_QUANTITY_DELTA} to the quantity of the
+         * book whose ID is passed as the argument. The delta is required and cannot be 0. The
+         * quantity is never allowed to drop below 0.
+         * The result contains the new quantity as {@link #EXTRA_QUANTITY}, or is null if the book
+         * does not exist or does not have enough copies in stock.
+         */
+        public static final String METHOD_ADJUST_QUANTITY = "adjustQuantity";
+        public static final String EXTRA_QUANTITY_DELTA = "quantityDelta";
+        public static final String EXTRA_QUANTITY = "quantity";
+
+        /**
+         * Provider method that returns the total value of all books in stock, i.e. the sum of
+         * price times quantity, as {@link #EXTRA_STOCK_VALUE} in cents.
+         */
+        public static final String METHOD_GET_STOCK_VALUE = "getStockValue";
+        public static final String EXTRA_STOCK_VALUE = "stockValue";
+
+        /**
+         * Provider method that returns how many change notifications the provider requested, how
+         * many it actually delivered to observers and how many were suppressed by coalescing them.
+         */
+        public static final String METHOD_GET_NOTIFICATION_STATS = "getNotificationStats";
+        public static final String EXTRA_NOTIFICATIONS_REQUESTED = "notificationsRequested";
+        public static final String EXTRA_NOTIFICATIONS_DELIVERED = "notificationsDelivered";
+        public static final String EXTRA_NOTIFICATIONS_SUPPRESSED = "notificationsSuppressed";
+
+        /**
+         * Provider method that opens the database, creating or migrating it if necessary, and
+         * compiles the statements of the most frequent writes. Called in the background at
+         * startup, so the first screen does not wait for it.
+         */
+        public static final String METHOD_WARM_UP = "warmUp";
+
+        /**
+         * Provider method that returns the metrics of the provider since it was created. For each
+         * operation and URI that was used, the result contains a Bundle under the key
+         * "operation:URI", e.g. "query:BOOKS" or "update:BOOK_ID", with the number of calls,
+         * failed calls and rows read or written, and the total, maximum and approximate median
+         * and 99th percentile latency in microseconds. The histograms are arrays whose element i
+         * counts the calls with a latency in microseconds, or a number of rows, from 2^(i-1) to
+         * 2^i - 1. The result also contains the figures of {@link #METHOD_GET_NOTIFICATION_STATS}.
+         */
+        public static final String METHOD_GET_METRICS = "getMetrics";
+        public static final String EXTRA_METRIC_CALLS = "calls";
+        public static final String EXTRA_METRIC_ERRORS = "errors";
+        public static final String EXTRA_METRIC_ROWS = "rows";
+        public static final String EXTRA_METRIC_TOTAL_MICROS = "totalMicros";
+        public static final String EXTRA_METRIC_MAX_MICROS = "maxMicros";
+        public static final String EXTRA_METRIC_P50_MICROS = "p50Micros";
+        public static final String EXTRA_METRIC_P99_MICROS = "p99Micros";
+        public static final String EXTRA_METRIC_LATENCY_HISTOGRAM = "latencyHistogram";
+        public static final String EXTRA_METRIC_ROWS_HISTOGRAM = "rowsHistogram";
+
+        /**
+         * Provider method that returns the latest queries that took at least
+         * {@link #EXTRA_SLOW_QUERY_THRESHOLD_MS}, oldest first. The result contains an array per
+         * field, with one element per query: the time it ended in milliseconds since the epoch,
+         * its SQL with all literals replaced by ?, its number of bind arguments, its duration in
+         * microseconds and its query plan with one line per step.
+         */
+        public static final String METHOD_GET_SLOW_QUERIES = "getSlowQueries";
+        public static final String EXTRA_SLOW_QUERY_TIMES = "slowQueryTimes";
+        public static final String EXTRA_SLOW_QUERY_SQL = "slowQuerySql";
+        public static final String EXTRA_SLOW_QUERY_BIND_COUNTS = "slowQueryBindCounts";
+        public static final String EXTRA_SLOW_QUERY_DURATIONS_MICROS = "slowQueryDurationsMicros";
+        public static final String EXTRA_SLOW_QUERY_PLANS = "slowQueryPlans";
+
+        /**
+         * Provider method that configures the slow query log. {@link #EXTRA_SLOW_QUERY_THRESHOLD_MS}
+         * sets the duration from which a query is logged. {@link #EXTRA_CHECK_FULL_SCANS} turns on
+         * a mode for tests in which every query that reads all books without an index fails with
+         * an {@link IllegalStateException}. Extras that are not given keep their current value.
+         */
+        public static final String METHOD_CONFIGURE_SLOW_QUERY_LOG = "configureSlowQueryLog";
+        public static final String EXTRA_SLOW_QUERY_THRESHOLD_MS = "slowQueryThresholdMs";
+        public static final String EXTRA_CHECK_FULL_SCANS = "checkFullScans";
+
+        /**
+         * Query parameters to read {@link #CONTENT_URI} in pages of at most {@link #QUERY_PARAMETER_LIMIT}
+         * rows, ordered by the column of {@link #QUERY_PARAMETER_SORT} and then {@link #_ID}.
+         * To get the next page, pass the sort key and ID of the last row of the current page as
+         * {@link #QUERY_PARAMETER_AFTER_KEY} and {@link #QUERY_PARAMETER_AFTER_ID}.
+         * To get the previous page, pass the sort key and ID of the first row of the current page as
+         * {@link #QUERY_PARAMETER_BEFORE_KEY} and {@link #QUERY_PARAMETER_BEFORE_ID}. Previous pages
+         * are returned in descending order, i.e. starting with the row closest to the given one.
+         * Queries of {@link #CONTENT_URI} always read a single page, so the limit is required.
+         * The sort order of these queries must be null.
+         */
+        public static final String QUERY_PARAMETER_LIMIT = "limit";
+        /**
+         * Number of rows to skip before the first row of a page of {@link #CONTENT_URI}, the search
+         * results, the suppliers, the books of a supplier or the stock movements of a book. It
+         * requires a {@link #QUERY_PARAMETER_LIMIT}, which these lists accept as well. The skipped
+         * rows are still read, so the catalog is better read after a key than at an offset.
+         */
+        public static final String QUERY_PARAMETER_OFFSET = "offset";
+        public static final String QUERY_PARAMETER_AFTER_KEY = "afterKey";
+        public static final String QUERY_PARAMETER_AFTER_ID = "afterId";
+        public static final String QUERY_PARAMETER_BEFORE_KEY = "beforeKey";
+        public static final String QUERY_PARAMETER_BEFORE_ID = "beforeId";
+
+        /**
+         * Sort order of the pages of {@link #CONTENT_URI}: one of {@link #SORT_NAME} (the default),
+         * {@link #SORT_PRICE}, {@link #SORT_QUANTITY} or {@link #SORT_CHANGED}. The key of a
+         * page is the value of the sort column, i.e. the name, the price in cents, the quantity
+         * or the {@link #COLUMN_LAST_MODIFIED} time. Recently changed books come first, all other
+         * orders are ascending.
+         */
+        public static final String QUERY_PARAMETER_SORT = "sort";
+        public static final String SORT_NAME = "name";
+        public static final String SORT_PRICE = "price";
+        public static final String SORT_QUANTITY = "quantity";
+        public static final String SORT_CHANGED = "changed";
+
+        /**
+         * Filters for queries of {@link #CONTENT_URI}: only books with at least one copy in stock
+         * if {@link #QUERY_PARAMETER_IN_STOCK} is "true", only books of the supplier with the ID
+         * {@link #QUERY_PARAMETER_SUPPLIER_ID}, and only books whose price in cents is between
+         * {@link #QUERY_PARAMETER_MIN_PRICE} and {@link #QUERY_PARAMETER_MAX_PRICE} inclusive.
+         */
+        public static final String QUERY_PARAMETER_IN_STOCK = "inStock";
+        public static final String QUERY_PARAMETER_SUPPLIER_ID = "supplierId";
+        public static final String QUERY_PARAMETER_MIN_PRICE = "minPrice";
+        public static final String QUERY_PARAMETER_MAX_PRICE = "maxPrice";
+
+        /**
+         * Query parameter for the update of a single book: the {@link #COLUMN_VERSION} the book
+         * is expected to have. If it has been updated since, nothing is written and the update
+         * returns 0, so the caller can reload the book and merge its changes.
+         */
+        public static final String QUERY_PARAMETER_EXPECTED_VERSION = "expectedVersion";
+
+        /**
+         * @return the URI of the book with the given ISBN-10 or ISBN-13, e.g. the text of a
+         * scanned barcode. A query of it returns the book, or no row if no book has that ISBN or
+         * the text is not a valid ISBN.
+         */
+        public static Uri buildIsbnUri(String isbn) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(PATH_ISBN)
+                    .appendPath(isbn)
+                    .build();
+        }
+    }
+
+    /**
+     * Summary figures of the whole inventory. They are kept up to date by triggers on the books
+     * table, so reading them does not depend on the number of books.
+     */
+    public static abstract class StatsEntry {
+
+        /**
+         * URI of the single row of figures. Observers of {@link BookEntry#CONTENT_URI} are
+         * notified when the figures change.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BookEntry.CONTENT_URI, PATH_STATS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI}.
+         */
+        public static final String CONTENT_ITEM_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE + "/"
+                + CONTENT_AUTHORITY + "/" + PATH_BOOKS + "/" + PATH_STATS;
+
+        public static final String TABLE_NAME = "inventory_stats";
+
+        public static final String _ID = BaseColumns._ID;
+        public static final String COLUMN_BOOK_COUNT = "bookCount";
+        /**
+         * Sum of the quantities of all books
+         */
+        public static final String COLUMN_TOTAL_UNITS = "totalUnits";
+        /**
+         * Sum of price times quantity of all books, in cents
+         */
+        public static final String COLUMN_STOCK_VALUE = "stockValue";
+        public static final String COLUMN_OUT_OF_STOCK_COUNT = "outOfStockCount";
+    }
+
+    /**
+     * Suppliers of the books. Each supplier name exists only once.
+     */
+    public static abstract class SupplierEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUPPLIERS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of suppliers.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a single supplier.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        public static final String TABLE_NAME = "suppliers";
+
+        public static final String _ID = BaseColumns._ID;
+        public static final String COLUMN_NAME = "name";
+        public static final String COLUMN_PHONE = "phoneNumber";
+
+        /**
+         * @return the URI of all books of the given supplier, with the same columns as
+         * {@link BookEntry#CONTENT_URI}
+         */
+        public static Uri buildBooksUri(long supplierId) {
+            return ContentUris.withAppendedId(CONTENT_URI, supplierId).buildUpon()
+                    .appendPath(PATH_BOOKS)
+                    .build();
+        }
     }
 
+    /**
+     * Append-only ledger of all changes to the quantity of the books, including adding and
+     * deleting a book. The rows are written by triggers in the same transaction as the change.
+     * Old movements are rolled into per-book snapshots by {@link #METHOD_COMPACT}, so the
+     * quantity at a time before the last compaction is only known at the times of the snapshots.
+     */
+    public static abstract class StockMovementEntry implements BaseColumns {
+
+        /**
+         * The MIME type of the movements of a book, see {@link #buildBookMovementsUri(long)}.
+         */
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/"
+                + CONTENT_AUTHORITY + "/" + PATH_BOOKS + "/" + PATH_MOVEMENTS;
 
+        public static final String TABLE_NAME = "stock_movements";
+
+        public static final String _ID = BaseColumns._ID;
+        public static final String COLUMN_BOOK_ID = "bookId";
+        /**
+         * Change of the quantity, negative for sales
+         */
+        public static final String COLUMN_DELTA = "delta";
+        /**
+         * Time of the change in milliseconds since the epoch
+         */
+        public static final String COLUMN_TIME = "time";
+
+        /**
+         * Provider method that returns the quantity of the book whose ID is passed as the argument
+         * at the time {@link #EXTRA_TIME} as {@link BookEntry#EXTRA_QUANTITY}.
+         */
+        public static final String METHOD_GET_QUANTITY_AT = "getQuantityAt";
+        public static final String EXTRA_TIME = "time";
+
+        /**
+         * Provider method that rolls all movements up to {@link #EXTRA_TIME} into a snapshot of
+         * each affected book and deletes them. Returns the number of deleted movements as
+         * {@link #EXTRA_MOVEMENTS_COMPACTED}.
+         */
+        public static final String METHOD_COMPACT = "compactStockMovements";
+        public static final String EXTRA_MOVEMENTS_COMPACTED = "movementsCompacted";
+
+        /**
+         * @return the URI of the movements of the given book that have not been compacted yet,
+         * oldest first
+         */
+        public static Uri buildBookMovementsUri(long bookId) {
+            return ContentUris.withAppendedId(BookEntry.CONTENT_URI, bookId).buildUpon()
+                    .appendPath(PATH_MOVEMENTS)
+                    .build();
+        }
+    }
 }
@@ -0,0 +1,103 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.annotation.WorkerThread;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Exports all books into a CSV file that can be read by {@link BookCsvImporter}. The books are
+ * read in keyset pages ordered by name and written out row by row, so only one page is held in
+ * memory regardless of the number of books.
+ */
+public class BookCsvExporter {
+
+    /**
+     * Columns of the CSV file, in the order they are written
+     */
+    public static final String[] COLUMNS = {
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRICE,
+            BookEntry.COLUMN_QUANTITY,
+            BookEntry.COLUMN_SUPPLIER_NAME,
+            BookEntry.COLUMN_SUPPLIER_PHONE,
+            BookEntry.COLUMN_ISBN};
+
+    /**
+     * Number of books read from the provider at once
+     */
+    static final int PAGE_SIZE = 500;
+
+    private static final String[] PROJECTION = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRICE,
+            BookEntry.COLUMN_QUANTITY,
+            BookEntry.COLUMN_SUPPLIER_NAME,
+            BookEntry.COLUMN_SUPPLIER_PHONE,
+            BookEntry.COLUMN_ISBN};
+
+    private final ContentResolver mContentResolver;
+
+    public BookCsvExporter(ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+    }
+
+    /**
+     * Write all books to the given output. The writer is flushed but not closed.
+     *
+     * @return the number of exported books
+     */
+    @WorkerThread
+    public int exportBooks(Writer output) throws IOException {
+        Csv.writeRecord(output, COLUMNS);
+
+        int exportedCount = 0;
+        String lastName = null;
+        long lastId = 0;
+        String[] fields = new String[COLUMNS.length];
+        while (true) {
+            Uri.Builder pageUri = BookEntry.CONTENT_URI.buildUpon()
+                    .appendQueryParameter(BookEntry.QUERY_PARAMETER_LIMIT, String.valueOf(PAGE_SIZE));
+            if (lastName != null) {
+                pageUri.appendQueryParameter(BookEntry.QUERY_PARAMETER_AFTER_KEY, lastName)
+                        .appendQueryParameter(BookEntry.QUERY_PARAMETER_AFTER_ID, String.valueOf(lastId));
+            }
+
+            Cursor cursor = mContentResolver.query(pageUri.build(), PROJECTION, null, null, null);
+            if (cursor == null) {
+                throw new IOException("Cannot query the books");
+            }
+            int pageCount;
+            try {
+                pageCount = cursor.getCount();
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(0);
+                    lastName = cursor.getString(1);
+                    fields[0] = lastName;
+                    fields[1] = Money.toPlainString(cursor.getLong(2));
+                    fields[2] = String.valueOf(cursor.getInt(3));
+                    fields[3] = cursor.getString(4);
+                    fields[4] = cursor.getString(5);
+                    //Books without ISBN get an empty field
+                    fields[5] = cursor.isNull(6) ? "" : cursor.getString(6);
+                    Csv.writeRecord(output, fields);
+                }
+            } finally {
+                cursor.close();
+            }
+
+            exportedCount += pageCount;
+            if (pageCount < PAGE_SIZE) {
+                break;
+            }
+        }
+        output.flush();
+        return exportedCount;
+    }
+}
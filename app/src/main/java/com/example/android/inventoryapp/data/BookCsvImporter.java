@@ -0,0 +1,285 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.text.TextUtils;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Imports books from a CSV file as written by {@link BookCsvExporter}. The file is read record by
+ * record and the valid books are inserted in chunks, each with a single
+ * {@link ContentResolver#bulkInsert} transaction, so the memory use does not depend on the size
+ * of the file. Invalid lines are skipped and reported in the {@link Result}.
+ * <p>
+ * The first line has to name the columns, see {@link BookCsvExporter#COLUMNS}. Their order does
+ * not matter and an empty or missing price or quantity column takes the default value. An empty
+ * or missing ISBN column imports the books without ISBN. A book whose ISBN already belongs to
+ * another book, or to a book further up in the file, is reported as an invalid line.
+ */
+public class BookCsvImporter {
+
+    /**
+     * Number of books inserted in one transaction
+     */
+    static final int CHUNK_SIZE = 500;
+
+    /**
+     * Maximum number of errors kept in the result, further errors are only counted
+     */
+    static final int MAX_REPORTED_ERRORS = 100;
+
+    /**
+     * Receives the progress of an import on the importing thread
+     */
+    public interface ProgressListener {
+        @WorkerThread
+        void onProgress(int linesRead, int booksImported);
+    }
+
+    /**
+     * A line that could not be imported
+     */
+    public static class LineError {
+        private final int mLineNumber;
+        private final String mMessage;
+
+        LineError(int lineNumber, String message) {
+            mLineNumber = lineNumber;
+            mMessage = message;
+        }
+
+        /**
+         * @return the line number, counting from 1
+         */
+        public int getLineNumber() {
+            return mLineNumber;
+        }
+
+        public String getMessage() {
+            return mMessage;
+        }
+    }
+
+    /**
+     * Outcome of an import
+     */
+    public static class Result {
+        private final int mImportedCount;
+        private final int mErrorCount;
+        private final List<LineError> mErrors;
+
+        Result(int importedCount, int errorCount, List<LineError> errors) {
+            mImportedCount = importedCount;
+            mErrorCount = errorCount;
+            mErrors = Collections.unmodifiableList(errors);
+        }
+
+        public int getImportedCount() {
+            return mImportedCount;
+        }
+
+        /**
+         * @return the number of skipped lines
+         */
+        public int getErrorCount() {
+            return mErrorCount;
+        }
+
+        /**
+         * @return the first {@link #MAX_REPORTED_ERRORS} errors
+         */
+        public List<LineError> getErrors() {
+            return mErrors;
+        }
+    }
+
+    private final ContentResolver mContentResolver;
+
+    public BookCsvImporter(ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+    }
+
+    /**
+     * Import all books of the given CSV input. The reader is not closed.
+     *
+     * @throws IOException if the input cannot be read or is not a CSV file of books. Books of
+     *                     the chunks inserted before stay in the database.
+     */
+    @WorkerThread
+    public Result importBooks(Reader input, @Nullable ProgressListener listener) throws IOException {
+        Csv.Reader reader = new Csv.Reader(new BufferedReader(input));
+        List<String> fields = new ArrayList<>();
+
+        if (!reader.readRecord(fields)) {
+            throw new IOException("The file is empty");
+        }
+        int[] columnIndices = findColumns(fields);
+
+        List<ContentValues> chunk = new ArrayList<>(CHUNK_SIZE);
+        //ISBNs of the books in the chunk, the ones of earlier chunks are already in the database
+        Set<String> chunkIsbns = new HashSet<>();
+        List<LineError> errors = new ArrayList<>();
+        int errorCount = 0;
+        int importedCount = 0;
+
+        while (reader.readRecord(fields)) {
+            if (fields.size() == 1 && fields.get(0).trim().isEmpty()) {
+                //skip empty lines
+                continue;
+            }
+            try {
+                ContentValues book = parseBook(fields, columnIndices);
+                String isbn = book.getAsString(BookEntry.COLUMN_ISBN);
+                if (isbn != null && (!chunkIsbns.add(isbn) || isbnExists(isbn))) {
+                    throw new IllegalArgumentException("ISBN " + isbn + " already belongs to another book");
+                }
+                chunk.add(book);
+            } catch (IllegalArgumentException e) {
+                errorCount++;
+                if (errors.size() < MAX_REPORTED_ERRORS) {
+                    errors.add(new LineError(reader.getRecordLineNumber(), e.getMessage()));
+                }
+            }
+
+            if (chunk.size() == CHUNK_SIZE) {
+                int inserted = insert(chunk);
+                errorCount += CHUNK_SIZE - inserted;
+                importedCount += inserted;
+                chunkIsbns.clear();
+                if (listener != null) {
+                    listener.onProgress(reader.getRecordLineNumber(), importedCount);
+                }
+            }
+        }
+        int lastChunkSize = chunk.size();
+        int inserted = insert(chunk);
+        errorCount += lastChunkSize - inserted;
+        importedCount += inserted;
+        if (listener != null) {
+            listener.onProgress(reader.getRecordLineNumber(), importedCount);
+        }
+
+        return new Result(importedCount, errorCount, errors);
+    }
+
+    /**
+     * Insert and clear the given books
+     *
+     * @return the number of inserted books. The ISBNs are checked beforehand, so books are only
+     * rejected if another book with the same ISBN is saved while the file is imported.
+     */
+    private int insert(List<ContentValues> chunk) {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        int inserted = mContentResolver.bulkInsert(BookEntry.CONTENT_URI,
+                chunk.toArray(new ContentValues[chunk.size()]));
+        chunk.clear();
+        return inserted;
+    }
+
+    /**
+     * @return whether a book with the given ISBN is already in the catalog
+     */
+    private boolean isbnExists(String isbn) {
+        Cursor cursor = mContentResolver.query(BookEntry.buildIsbnUri(isbn),
+                new String[]{BookEntry._ID}, null, null, null);
+        if (cursor == null) {
+            return false;
+        }
+        try {
+            return cursor.getCount() > 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Find the index of each of the {@link BookCsvExporter#COLUMNS} in the given header
+     *
+     * @return the indices in the order of the columns, -1 for a missing optional column
+     */
+    private static int[] findColumns(List<String> header) throws IOException {
+        String[] columns = BookCsvExporter.COLUMNS;
+        int[] indices = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            indices[i] = -1;
+            for (int j = 0; j < header.size(); j++) {
+                if (columns[i].equalsIgnoreCase(header.get(j).trim())) {
+                    indices[i] = j;
+                    break;
+                }
+            }
+            if (indices[i] == -1 && !columns[i].equals(BookEntry.COLUMN_PRICE)
+                    && !columns[i].equals(BookEntry.COLUMN_QUANTITY)
+                    && !columns[i].equals(BookEntry.COLUMN_ISBN)) {
+                throw new IOException("Missing column " + columns[i]);
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Validate a record the same way as the {@link BookProvider} does
+     *
+     * @throws IllegalArgumentException with a message for the user if the record is invalid
+     */
+    private static ContentValues parseBook(List<String> fields, int[] columnIndices) {
+        ContentValues values = new ContentValues();
+        for (int i = 0; i < columnIndices.length; i++) {
+            String column = BookCsvExporter.COLUMNS[i];
+            String field = columnIndices[i] < fields.size() && columnIndices[i] >= 0
+                    ? fields.get(columnIndices[i]).trim() : "";
+
+            if (column.equals(BookEntry.COLUMN_PRICE)) {
+                if (!field.isEmpty()) {
+                    try {
+                        values.put(column, Money.parse(field));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid price \"" + field + "\"");
+                    }
+                }
+            } else if (column.equals(BookEntry.COLUMN_QUANTITY)) {
+                if (!field.isEmpty()) {
+                    int quantity;
+                    try {
+                        quantity = Integer.parseInt(field);
+                    } catch (NumberFormatException e) {
+                        quantity = -1;
+                    }
+                    if (quantity < 0) {
+                        throw new IllegalArgumentException("Invalid quantity \"" + field + "\"");
+                    }
+                    values.put(column, quantity);
+                }
+            } else if (column.equals(BookEntry.COLUMN_ISBN)) {
+                if (!field.isEmpty()) {
+                    try {
+                        values.put(column, Isbn.normalize(field));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Invalid ISBN \"" + field + "\"");
+                    }
+                }
+            } else {
+                if (TextUtils.isEmpty(field)) {
+                    throw new IllegalArgumentException("Missing " + column);
+                }
+                values.put(column, field);
+            }
+        }
+        return values;
+    }
+}
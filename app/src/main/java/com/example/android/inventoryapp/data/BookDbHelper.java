@@ -1,10 +1,15 @@
 package com.example.android.inventoryapp.data;
 
 import android.content.Context;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
 import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookContract.StatsEntry;
+import com.example.android.inventoryapp.data.BookContract.StockMovementEntry;
+import com.example.android.inventoryapp.data.BookContract.SupplierEntry;
 
 public class BookDbHelper extends SQLiteOpenHelper {
 
@@ -16,14 +21,113 @@ public class BookDbHelper extends SQLiteOpenHelper {
     /**
      * Database version. If you change the database schema, you must increment the database version.
      */
-    private static final int DATABASE_VERSION = 1;
+    static final int DATABASE_VERSION = 10;
+
+    /**
+     * Names of the secondary indexes on the Books table
+     */
+    static final String INDEX_CATALOG = "books_catalog_idx";
+    static final String INDEX_QUANTITY = "books_quantity_idx";
+    static final String INDEX_SUPPLIER_ID = "books_supplier_id_idx";
+    static final String INDEX_PRICE = "books_price_idx";
+    static final String INDEX_LAST_MODIFIED = "books_last_modified_idx";
+    static final String INDEX_ISBN = "books_isbn_idx";
+
+    /**
+     * View of the Books table joined with the supplier of each book, with the same columns as
+     * the Books table had before the suppliers were moved into their own table
+     */
+    static final String VIEW_BOOKS_WITH_SUPPLIERS = "books_with_suppliers";
+
+    /**
+     * Number of books converted per statement when the Books table is rebuilt
+     */
+    private static final int MIGRATION_BATCH_SIZE = 1000;
+
+    /**
+     * Name of the full-text index over the product and supplier names of all books.
+     * The docid of each entry is the _id of its book.
+     */
+    static final String TABLE_BOOKS_FTS = "books_fts";
+
+    /**
+     * Quantity of a book at a given time, into which older stock movements have been rolled.
+     * The primary key is (bookId, time).
+     */
+    static final String TABLE_STOCK_SNAPSHOTS = "stock_snapshots";
+    static final String COLUMN_SNAPSHOT_BOOK_ID = "bookId";
+    static final String COLUMN_SNAPSHOT_TIME = "time";
+    static final String COLUMN_SNAPSHOT_QUANTITY = "quantity";
+
+    static final String INDEX_STOCK_MOVEMENTS_BOOK = "stock_movements_book_idx";
+
+    /**
+     * SQL expression for the current time in milliseconds since the epoch
+     */
+    private static final String SQL_NOW_MILLIS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
 
     public BookDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Create a helper for the database with the given file name, or an in-memory database if the
+     * name is null
+     */
+    BookDbHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // Books must not refer to a supplier that does not exist
+        db.setForeignKeyConstraintsEnabled(true);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
+        // Create the schema of the first version and migrate it to the current version, so new
+        // and upgraded databases always end up with exactly the same schema
+        createVersion1(db);
+        onUpgrade(db, 1, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Apply each migration step in order, starting with the first one the database misses
+        if (oldVersion < 2) {
+            upgradeToVersion2(db);
+        }
+        if (oldVersion < 3) {
+            upgradeToVersion3(db);
+        }
+        if (oldVersion < 4) {
+            upgradeToVersion4(db);
+        }
+        if (oldVersion < 5) {
+            upgradeToVersion5(db);
+        }
+        if (oldVersion < 6) {
+            upgradeToVersion6(db);
+        }
+        if (oldVersion < 7) {
+            upgradeToVersion7(db);
+        }
+        if (oldVersion < 8) {
+            upgradeToVersion8(db);
+        }
+        if (oldVersion < 9) {
+            upgradeToVersion9(db);
+        }
+        if (oldVersion < 10) {
+            upgradeToVersion10(db);
+        }
+    }
+
+    /**
+     * Version 1: the Books table
+     */
+    private static void createVersion1(SQLiteDatabase db) {
 
         // Create a String that contains the SQL statement to create the Books table
         String SQL_CREATE_BOOKS_TABLE = "CREATE TABLE " + BookEntry.TABLE_NAME + " ("
@@ -36,12 +140,478 @@ public class BookDbHelper extends SQLiteOpenHelper {
 
         // Execute the SQL statement
         db.execSQL(SQL_CREATE_BOOKS_TABLE);
+    }
 
+    /**
+     * Version 2: indexes for sorting and searching the Books table.
+     * The catalog index contains all columns of the catalog list, so the list can be read from
+     * the index alone, without looking up each row in the table (the _id is part of every index).
+     */
+    private static void upgradeToVersion2(SQLiteDatabase db) {
+        createIndexesVersion2(db);
     }
 
-    @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    /**
+     * Historical: only exists between versions 2 and 5, version 6 drops it with the old Books table
+     */
+    private static final String INDEX_SUPPLIER_NAME_VERSION2 = "books_supplier_name_idx";
+
+    private static void createIndexesVersion2(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + INDEX_CATALOG + " ON " + BookEntry.TABLE_NAME + " ("
+                + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                + BookEntry.COLUMN_PRICE + ", "
+                + BookEntry.COLUMN_QUANTITY + ");");
+        db.execSQL("CREATE INDEX " + INDEX_SUPPLIER_NAME_VERSION2 + " ON " + BookEntry.TABLE_NAME + " ("
+                + BookEntry.COLUMN_SUPPLIER_NAME + ");");
+        db.execSQL("CREATE INDEX " + INDEX_QUANTITY + " ON " + BookEntry.TABLE_NAME + " ("
+                + BookEntry.COLUMN_QUANTITY + ");");
+    }
+
+    /**
+     * Version 3: a full-text index for searching books by product and supplier name.
+     * It is filled with the existing books and kept in sync with the Books table by triggers.
+     */
+    private static void upgradeToVersion3(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_BOOKS_FTS + " USING fts4("
+                + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                + BookEntry.COLUMN_SUPPLIER_NAME + ");");
+
+        db.execSQL("INSERT INTO " + TABLE_BOOKS_FTS + " (docid, "
+                + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_SUPPLIER_NAME + ")"
+                + " SELECT " + BookEntry._ID + ", "
+                + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_SUPPLIER_NAME
+                + " FROM " + BookEntry.TABLE_NAME + ";");
+
+        createFullTextTriggersVersion3(db);
+    }
+
+    private static void createFullTextTriggersVersion3(SQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER books_fts_insert AFTER INSERT ON " + BookEntry.TABLE_NAME
+                + " BEGIN INSERT INTO " + TABLE_BOOKS_FTS + " (docid, "
+                + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_SUPPLIER_NAME + ")"
+                + " VALUES (NEW." + BookEntry._ID + ", NEW." + BookEntry.COLUMN_PRODUCT_NAME
+                + ", NEW." + BookEntry.COLUMN_SUPPLIER_NAME + "); END;");
+        db.execSQL("CREATE TRIGGER books_fts_update AFTER UPDATE OF "
+                + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_SUPPLIER_NAME
+                + " ON " + BookEntry.TABLE_NAME
+                + " BEGIN UPDATE " + TABLE_BOOKS_FTS + " SET "
+                + BookEntry.COLUMN_PRODUCT_NAME + " = NEW." + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                + BookEntry.COLUMN_SUPPLIER_NAME + " = NEW." + BookEntry.COLUMN_SUPPLIER_NAME
+                + " WHERE docid = NEW." + BookEntry._ID + "; END;");
+        db.execSQL("CREATE TRIGGER books_fts_delete AFTER DELETE ON " + BookEntry.TABLE_NAME
+                + " BEGIN DELETE FROM " + TABLE_BOOKS_FTS
+                + " WHERE docid = OLD." + BookEntry._ID + "; END;");
+    }
+
+    /**
+     * Version 4: prices are stored as an integer number of cents instead of a floating point
+     * number, see {@link Money}. SQLite cannot change the type of a column, so the Books table is
+     * rebuilt and the existing books are converted in batches of {@link #MIGRATION_BATCH_SIZE}.
+     */
+    private static void upgradeToVersion4(SQLiteDatabase db) {
+        String newTable = BookEntry.TABLE_NAME + "_new";
+        db.execSQL("CREATE TABLE " + newTable + " ("
+                + BookEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + BookEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
+                + BookEntry.COLUMN_PRICE + " INTEGER NOT NULL DEFAULT 999900, "
+                + BookEntry.COLUMN_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                + BookEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL, "
+                + BookEntry.COLUMN_SUPPLIER_PHONE + " TEXT NOT NULL);");
+
+        long maxId = DatabaseUtils.longForQuery(db,
+                "SELECT IFNULL(MAX(" + BookEntry._ID + "), 0) FROM " + BookEntry.TABLE_NAME, null);
+        SQLiteStatement copyBatch = db.compileStatement("INSERT INTO " + newTable
+                + " SELECT " + BookEntry._ID + ", "
+                + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                + "CAST(ROUND(" + BookEntry.COLUMN_PRICE + " * 100) AS INTEGER), "
+                + BookEntry.COLUMN_QUANTITY + ", "
+                + BookEntry.COLUMN_SUPPLIER_NAME + ", "
+                + BookEntry.COLUMN_SUPPLIER_PHONE
+                + " FROM " + BookEntry.TABLE_NAME
+                + " WHERE " + BookEntry._ID + " > ? AND " + BookEntry._ID + " <= ?");
+        try {
+            for (long start = 0; start < maxId; start += MIGRATION_BATCH_SIZE) {
+                copyBatch.bindLong(1, start);
+                copyBatch.bindLong(2, start + MIGRATION_BATCH_SIZE);
+                copyBatch.execute();
+            }
+        } finally {
+            copyBatch.close();
+        }
+
+        // Keep the AUTOINCREMENT counter, so IDs of deleted books are not handed out again
+        long sequence = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(seq), 0) FROM sqlite_sequence"
+                + " WHERE name = ?", new String[]{BookEntry.TABLE_NAME});
+
+        // Dropping the old table also drops its indexes and triggers, so recreate them
+        db.execSQL("DROP TABLE " + BookEntry.TABLE_NAME + ";");
+        db.execSQL("ALTER TABLE " + newTable + " RENAME TO " + BookEntry.TABLE_NAME + ";");
+        db.execSQL("DELETE FROM sqlite_sequence WHERE name = ?", new Object[]{BookEntry.TABLE_NAME});
+        db.execSQL("INSERT INTO sqlite_sequence (name, seq) VALUES (?, ?)",
+                new Object[]{BookEntry.TABLE_NAME, Math.max(sequence, maxId)});
+        createIndexesVersion2(db);
+        createFullTextTriggersVersion3(db);
+    }
+
+    /**
+     * Version 5: a table with a single row of summary figures of all books. It is filled from the
+     * existing books once and then updated by triggers with the difference each written book
+     * makes, so the figures are exact without ever scanning the Books table again.
+     */
+    private static void upgradeToVersion5(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + StatsEntry.TABLE_NAME + " ("
+                + StatsEntry._ID + " INTEGER PRIMARY KEY CHECK (" + StatsEntry._ID + " = 1), "
+                + StatsEntry.COLUMN_BOOK_COUNT + " INTEGER NOT NULL, "
+                + StatsEntry.COLUMN_TOTAL_UNITS + " INTEGER NOT NULL, "
+                + StatsEntry.COLUMN_STOCK_VALUE + " INTEGER NOT NULL, "
+                + StatsEntry.COLUMN_OUT_OF_STOCK_COUNT + " INTEGER NOT NULL);");
+
+        db.execSQL("INSERT INTO " + StatsEntry.TABLE_NAME + " SELECT 1, COUNT(*), "
+                + "IFNULL(SUM(" + BookEntry.COLUMN_QUANTITY + "), 0), "
+                + "IFNULL(SUM(" + BookEntry.COLUMN_PRICE + " * " + BookEntry.COLUMN_QUANTITY + "), 0), "
+                + "IFNULL(SUM(" + BookEntry.COLUMN_QUANTITY + " = 0), 0)"
+                + " FROM " + BookEntry.TABLE_NAME + ";");
+
+        createStatsTriggersVersion5(db);
+    }
+
+    private static void createStatsTriggersVersion5(SQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER inventory_stats_insert AFTER INSERT ON " + BookEntry.TABLE_NAME
+                + " BEGIN UPDATE " + StatsEntry.TABLE_NAME + " SET "
+                + StatsEntry.COLUMN_BOOK_COUNT + " = " + StatsEntry.COLUMN_BOOK_COUNT + " + 1, "
+                + StatsEntry.COLUMN_TOTAL_UNITS + " = " + StatsEntry.COLUMN_TOTAL_UNITS
+                + " + NEW." + BookEntry.COLUMN_QUANTITY + ", "
+                + StatsEntry.COLUMN_STOCK_VALUE + " = " + StatsEntry.COLUMN_STOCK_VALUE
+                + " + NEW." + BookEntry.COLUMN_PRICE + " * NEW." + BookEntry.COLUMN_QUANTITY + ", "
+                + StatsEntry.COLUMN_OUT_OF_STOCK_COUNT + " = " + StatsEntry.COLUMN_OUT_OF_STOCK_COUNT
+                + " + (NEW." + BookEntry.COLUMN_QUANTITY + " = 0); END;");
+        db.execSQL("CREATE TRIGGER inventory_stats_update AFTER UPDATE OF "
+                + BookEntry.COLUMN_PRICE + ", " + BookEntry.COLUMN_QUANTITY
+                + " ON " + BookEntry.TABLE_NAME
+                + " BEGIN UPDATE " + StatsEntry.TABLE_NAME + " SET "
+                + StatsEntry.COLUMN_TOTAL_UNITS + " = " + StatsEntry.COLUMN_TOTAL_UNITS
+                + " + NEW." + BookEntry.COLUMN_QUANTITY + " - OLD." + BookEntry.COLUMN_QUANTITY + ", "
+                + StatsEntry.COLUMN_STOCK_VALUE + " = " + StatsEntry.COLUMN_STOCK_VALUE
+                + " + NEW." + BookEntry.COLUMN_PRICE + " * NEW." + BookEntry.COLUMN_QUANTITY
+                + " - OLD." + BookEntry.COLUMN_PRICE + " * OLD." + BookEntry.COLUMN_QUANTITY + ", "
+                + StatsEntry.COLUMN_OUT_OF_STOCK_COUNT + " = " + StatsEntry.COLUMN_OUT_OF_STOCK_COUNT
+                + " + (NEW." + BookEntry.COLUMN_QUANTITY + " = 0) - (OLD." + BookEntry.COLUMN_QUANTITY
+                + " = 0); END;");
+        db.execSQL("CREATE TRIGGER inventory_stats_delete AFTER DELETE ON " + BookEntry.TABLE_NAME
+                + " BEGIN UPDATE " + StatsEntry.TABLE_NAME + " SET "
+                + StatsEntry.COLUMN_BOOK_COUNT + " = " + StatsEntry.COLUMN_BOOK_COUNT + " - 1, "
+                + StatsEntry.COLUMN_TOTAL_UNITS + " = " + StatsEntry.COLUMN_TOTAL_UNITS
+                + " - OLD." + BookEntry.COLUMN_QUANTITY + ", "
+                + StatsEntry.COLUMN_STOCK_VALUE + " = " + StatsEntry.COLUMN_STOCK_VALUE
+                + " - OLD." + BookEntry.COLUMN_PRICE + " * OLD." + BookEntry.COLUMN_QUANTITY + ", "
+                + StatsEntry.COLUMN_OUT_OF_STOCK_COUNT + " = " + StatsEntry.COLUMN_OUT_OF_STOCK_COUNT
+                + " - (OLD." + BookEntry.COLUMN_QUANTITY + " = 0); END;");
+    }
+
+    /**
+     * Version 6: suppliers are stored once in their own table and each book refers to its
+     * supplier by ID. A supplier is created for each distinct supplier name; if the books of a
+     * supplier have different phone numbers, the one of the most recently added book is kept.
+     * The Books table is rebuilt with the supplierId column and the books are copied in batches
+     * of {@link #MIGRATION_BATCH_SIZE}. Queries that need the supplier columns go through
+     * {@link #VIEW_BOOKS_WITH_SUPPLIERS}.
+     */
+    private static void upgradeToVersion6(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + SupplierEntry.TABLE_NAME + " ("
+                + SupplierEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + SupplierEntry.COLUMN_NAME + " TEXT NOT NULL UNIQUE, "
+                + SupplierEntry.COLUMN_PHONE + " TEXT NOT NULL);");
+
+        // Newest books first, so their phone number wins and the others are ignored
+        db.execSQL("INSERT OR IGNORE INTO " + SupplierEntry.TABLE_NAME + " ("
+                + SupplierEntry.COLUMN_NAME + ", " + SupplierEntry.COLUMN_PHONE + ")"
+                + " SELECT " + BookEntry.COLUMN_SUPPLIER_NAME + ", " + BookEntry.COLUMN_SUPPLIER_PHONE
+                + " FROM " + BookEntry.TABLE_NAME + " ORDER BY " + BookEntry._ID + " DESC;");
+
+        String newTable = BookEntry.TABLE_NAME + "_new";
+        db.execSQL("CREATE TABLE " + newTable + " ("
+                + BookEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + BookEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
+                + BookEntry.COLUMN_PRICE + " INTEGER NOT NULL DEFAULT 999900, "
+                + BookEntry.COLUMN_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                + BookEntry.COLUMN_SUPPLIER_ID + " INTEGER NOT NULL REFERENCES "
+                + SupplierEntry.TABLE_NAME + " (" + SupplierEntry._ID + "));");
+
+        long maxId = DatabaseUtils.longForQuery(db,
+                "SELECT IFNULL(MAX(" + BookEntry._ID + "), 0) FROM " + BookEntry.TABLE_NAME, null);
+        // The supplier of each book is looked up through the unique index on the supplier name
+        SQLiteStatement copyBatch = db.compileStatement("INSERT INTO " + newTable
+                + " SELECT b." + BookEntry._ID + ", "
+                + "b." + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                + "b." + BookEntry.COLUMN_PRICE + ", "
+                + "b." + BookEntry.COLUMN_QUANTITY + ", "
+                + "s." + SupplierEntry._ID
+                + " FROM " + BookEntry.TABLE_NAME + " b JOIN " + SupplierEntry.TABLE_NAME + " s"
+                + " ON s." + SupplierEntry.COLUMN_NAME + " = b." + BookEntry.COLUMN_SUPPLIER_NAME
+                + " WHERE b." + BookEntry._ID + " > ? AND b." + BookEntry._ID + " <= ?");
+        try {
+            for (long start = 0; start < maxId; start += MIGRATION_BATCH_SIZE) {
+                copyBatch.bindLong(1, start);
+                copyBatch.bindLong(2, start + MIGRATION_BATCH_SIZE);
+                copyBatch.execute();
+            }
+        } finally {
+            copyBatch.close();
+        }
 
+        // Keep the AUTOINCREMENT counter, so IDs of deleted books are not handed out again
+        long sequence = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(seq), 0) FROM sqlite_sequence"
+                + " WHERE name = ?", new String[]{BookEntry.TABLE_NAME});
+
+        // Dropping the old table also drops its indexes and triggers, so recreate them
+        db.execSQL("DROP TABLE " + BookEntry.TABLE_NAME + ";");
+        db.execSQL("ALTER TABLE " + newTable + " RENAME TO " + BookEntry.TABLE_NAME + ";");
+        db.execSQL("DELETE FROM sqlite_sequence WHERE name = ?", new Object[]{BookEntry.TABLE_NAME});
+        db.execSQL("INSERT INTO sqlite_sequence (name, seq) VALUES (?, ?)",
+                new Object[]{BookEntry.TABLE_NAME, Math.max(sequence, maxId)});
+
+        createIndexesVersion6(db);
+        createFullTextTriggersVersion6(db);
+        createStatsTriggersVersion5(db);
+
+        createBooksWithSuppliersView(db, BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAME,
+                BookEntry.COLUMN_PRICE, BookEntry.COLUMN_QUANTITY, BookEntry.COLUMN_SUPPLIER_ID);
+    }
+
+    /**
+     * The indexes of version 2 without the one on the supplier name, which is now covered by
+     * the unique constraint of the suppliers table, plus one for the books of a supplier
+     */
+    private static void createIndexesVersion6(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + INDEX_CATALOG + " ON " + BookEntry.TABLE_NAME + " ("
+                + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                + BookEntry.COLUMN_PRICE + ", "
+                + BookEntry.COLUMN_QUANTITY + ");");
+        db.execSQL("CREATE INDEX " + INDEX_QUANTITY + " ON " + BookEntry.TABLE_NAME + " ("
+                + BookEntry.COLUMN_QUANTITY + ");");
+        db.execSQL("CREATE INDEX " + INDEX_SUPPLIER_ID + " ON " + BookEntry.TABLE_NAME + " ("
+                + BookEntry.COLUMN_SUPPLIER_ID + ");");
+    }
+
+    /**
+     * The full-text index keeps the supplier name of each book, so it is looked up in the
+     * suppliers table and renaming a supplier updates the entries of all of its books
+     */
+    private static void createFullTextTriggersVersion6(SQLiteDatabase db) {
+        String supplierName = "(SELECT " + SupplierEntry.COLUMN_NAME + " FROM " + SupplierEntry.TABLE_NAME
+                + " WHERE " + SupplierEntry._ID + " = NEW." + BookEntry.COLUMN_SUPPLIER_ID + ")";
+        db.execSQL("CREATE TRIGGER books_fts_insert AFTER INSERT ON " + BookEntry.TABLE_NAME
+                + " BEGIN INSERT INTO " + TABLE_BOOKS_FTS + " (docid, "
+                + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_SUPPLIER_NAME + ")"
+                + " VALUES (NEW." + BookEntry._ID + ", NEW." + BookEntry.COLUMN_PRODUCT_NAME
+                + ", " + supplierName + "); END;");
+        db.execSQL("CREATE TRIGGER books_fts_update AFTER UPDATE OF "
+                + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_SUPPLIER_ID
+                + " ON " + BookEntry.TABLE_NAME
+                + " BEGIN UPDATE " + TABLE_BOOKS_FTS + " SET "
+                + BookEntry.COLUMN_PRODUCT_NAME + " = NEW." + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                + BookEntry.COLUMN_SUPPLIER_NAME + " = " + supplierName
+                + " WHERE docid = NEW." + BookEntry._ID + "; END;");
+        db.execSQL("CREATE TRIGGER books_fts_delete AFTER DELETE ON " + BookEntry.TABLE_NAME
+                + " BEGIN DELETE FROM " + TABLE_BOOKS_FTS
+                + " WHERE docid = OLD." + BookEntry._ID + "; END;");
+        db.execSQL("CREATE TRIGGER suppliers_fts_update AFTER UPDATE OF " + SupplierEntry.COLUMN_NAME
+                + " ON " + SupplierEntry.TABLE_NAME
+                + " BEGIN UPDATE " + TABLE_BOOKS_FTS + " SET "
+                + BookEntry.COLUMN_SUPPLIER_NAME + " = NEW." + SupplierEntry.COLUMN_NAME
+                + " WHERE docid IN (SELECT " + BookEntry._ID + " FROM " + BookEntry.TABLE_NAME
+                + " WHERE " + BookEntry.COLUMN_SUPPLIER_ID + " = NEW." + SupplierEntry._ID + "); END;");
     }
 
+    /**
+     * Version 7: books remember when they were last changed, and every sort order of the
+     * catalog has a covering index that starts with the sort column followed by the _id, so a
+     * page in any order is read straight from its index without sorting the table.
+     */
+    private static void upgradeToVersion7(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN "
+                + BookEntry.COLUMN_LAST_MODIFIED + " INTEGER NOT NULL DEFAULT 0;");
+
+        db.execSQL("DROP INDEX " + INDEX_CATALOG + ";");
+        db.execSQL("DROP INDEX " + INDEX_QUANTITY + ";");
+        createIndexesVersion7(db);
+        createLastModifiedTriggersVersion7(db);
+
+        db.execSQL("DROP VIEW " + VIEW_BOOKS_WITH_SUPPLIERS + ";");
+        createBooksWithSuppliersView(db, BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAME,
+                BookEntry.COLUMN_PRICE, BookEntry.COLUMN_QUANTITY, BookEntry.COLUMN_SUPPLIER_ID,
+                BookEntry.COLUMN_LAST_MODIFIED);
+    }
+
+    /**
+     * One covering index per sort order of the catalog. The _id is part of each index, so the
+     * keyset condition and ORDER BY (column, _id) are answered by the index alone.
+     */
+    private static void createIndexesVersion7(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + INDEX_CATALOG + " ON " + BookEntry.TABLE_NAME + " ("
+                + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                + BookEntry._ID + ", "
+                + BookEntry.COLUMN_PRICE + ", "
+                + BookEntry.COLUMN_QUANTITY + ", "
+                + BookEntry.COLUMN_LAST_MODIFIED + ");");
+        db.execSQL("CREATE INDEX " + INDEX_PRICE + " ON " + BookEntry.TABLE_NAME + " ("
+                + BookEntry.COLUMN_PRICE + ", "
+                + BookEntry._ID + ", "
+                + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                + BookEntry.COLUMN_QUANTITY + ", "
+                + BookEntry.COLUMN_LAST_MODIFIED + ");");
+        db.execSQL("CREATE INDEX " + INDEX_QUANTITY + " ON " + BookEntry.TABLE_NAME + " ("
+                + BookEntry.COLUMN_QUANTITY + ", "
+                + BookEntry._ID + ", "
+                + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                + BookEntry.COLUMN_PRICE + ", "
+                + BookEntry.COLUMN_LAST_MODIFIED + ");");
+        db.execSQL("CREATE INDEX " + INDEX_LAST_MODIFIED + " ON " + BookEntry.TABLE_NAME + " ("
+                + BookEntry.COLUMN_LAST_MODIFIED + ", "
+                + BookEntry._ID + ", "
+                + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                + BookEntry.COLUMN_PRICE + ", "
+                + BookEntry.COLUMN_QUANTITY + ");");
+    }
+
+    /**
+     * Set the modification time in milliseconds whenever a book is added or one of its columns
+     * changes. Only the lastModified column is updated, so no other trigger fires again.
+     */
+    private static void createLastModifiedTriggersVersion7(SQLiteDatabase db) {
+        String setLastModified = " BEGIN UPDATE " + BookEntry.TABLE_NAME + " SET "
+                + BookEntry.COLUMN_LAST_MODIFIED + " = " + SQL_NOW_MILLIS
+                + " WHERE " + BookEntry._ID + " = NEW." + BookEntry._ID + "; END;";
+        db.execSQL("CREATE TRIGGER books_last_modified_insert AFTER INSERT ON " + BookEntry.TABLE_NAME
+                + setLastModified);
+        db.execSQL("CREATE TRIGGER books_last_modified_update AFTER UPDATE OF "
+                + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_PRICE + ", "
+                + BookEntry.COLUMN_QUANTITY + ", " + BookEntry.COLUMN_SUPPLIER_ID
+                + " ON " + BookEntry.TABLE_NAME + setLastModified);
+    }
+
+    /**
+     * Version 8: every change to the quantity of a book is appended to the stock movements by
+     * triggers, and old movements are rolled into the stock snapshots, see {@link StockLedger}.
+     * The current quantities become the first snapshot, so the ledger adds up from here on.
+     */
+    private static void upgradeToVersion8(SQLiteDatabase db) {
+        // Movements are kept after their book is deleted, so there is no foreign key
+        db.execSQL("CREATE TABLE " + StockMovementEntry.TABLE_NAME + " ("
+                + StockMovementEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + StockMovementEntry.COLUMN_BOOK_ID + " INTEGER NOT NULL, "
+                + StockMovementEntry.COLUMN_DELTA + " INTEGER NOT NULL, "
+                + StockMovementEntry.COLUMN_TIME + " INTEGER NOT NULL);");
+        // Covers summing up the movements of a book up to a given time
+        db.execSQL("CREATE INDEX " + INDEX_STOCK_MOVEMENTS_BOOK + " ON " + StockMovementEntry.TABLE_NAME + " ("
+                + StockMovementEntry.COLUMN_BOOK_ID + ", "
+                + StockMovementEntry.COLUMN_TIME + ", "
+                + StockMovementEntry.COLUMN_DELTA + ");");
+
+        db.execSQL("CREATE TABLE " + TABLE_STOCK_SNAPSHOTS + " ("
+                + COLUMN_SNAPSHOT_BOOK_ID + " INTEGER NOT NULL, "
+                + COLUMN_SNAPSHOT_TIME + " INTEGER NOT NULL, "
+                + COLUMN_SNAPSHOT_QUANTITY + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_SNAPSHOT_BOOK_ID + ", " + COLUMN_SNAPSHOT_TIME + "));");
+        db.execSQL("INSERT INTO " + TABLE_STOCK_SNAPSHOTS + " SELECT "
+                + BookEntry._ID + ", " + SQL_NOW_MILLIS + ", " + BookEntry.COLUMN_QUANTITY
+                + " FROM " + BookEntry.TABLE_NAME + ";");
+
+        createStockMovementTriggersVersion8(db);
+    }
+
+    private static void createStockMovementTriggersVersion8(SQLiteDatabase db) {
+        String insertMovement = " BEGIN INSERT INTO " + StockMovementEntry.TABLE_NAME + " ("
+                + StockMovementEntry.COLUMN_BOOK_ID + ", " + StockMovementEntry.COLUMN_DELTA + ", "
+                + StockMovementEntry.COLUMN_TIME + ") VALUES (";
+        db.execSQL("CREATE TRIGGER stock_movements_insert AFTER INSERT ON " + BookEntry.TABLE_NAME
+                + " WHEN NEW." + BookEntry.COLUMN_QUANTITY + " <> 0"
+                + insertMovement + "NEW." + BookEntry._ID + ", NEW." + BookEntry.COLUMN_QUANTITY
+                + ", " + SQL_NOW_MILLIS + "); END;");
+        db.execSQL("CREATE TRIGGER stock_movements_update AFTER UPDATE OF " + BookEntry.COLUMN_QUANTITY
+                + " ON " + BookEntry.TABLE_NAME
+                + " WHEN NEW." + BookEntry.COLUMN_QUANTITY + " <> OLD." + BookEntry.COLUMN_QUANTITY
+                + insertMovement + "NEW." + BookEntry._ID + ", NEW." + BookEntry.COLUMN_QUANTITY
+                + " - OLD." + BookEntry.COLUMN_QUANTITY + ", " + SQL_NOW_MILLIS + "); END;");
+        // Like adding a book, deleting one writes a movement, so deleting all books writes one
+        // row per book in stock. Their quantity at any time stays known after the delete.
+        db.execSQL("CREATE TRIGGER stock_movements_delete AFTER DELETE ON " + BookEntry.TABLE_NAME
+                + " WHEN OLD." + BookEntry.COLUMN_QUANTITY + " <> 0"
+                + insertMovement + "OLD." + BookEntry._ID + ", -OLD." + BookEntry.COLUMN_QUANTITY
+                + ", " + SQL_NOW_MILLIS + "); END;");
+    }
+
+    /**
+     * Version 9: books have a version that is incremented with every update, so writers can
+     * detect that a book changed since they read it
+     */
+    private static void upgradeToVersion9(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN "
+                + BookEntry.COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 0;");
+        // Only the version column is written, so no other trigger fires again
+        db.execSQL("CREATE TRIGGER books_version_update AFTER UPDATE OF "
+                + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_PRICE + ", "
+                + BookEntry.COLUMN_QUANTITY + ", " + BookEntry.COLUMN_SUPPLIER_ID
+                + " ON " + BookEntry.TABLE_NAME
+                + " BEGIN UPDATE " + BookEntry.TABLE_NAME + " SET "
+                + BookEntry.COLUMN_VERSION + " = OLD." + BookEntry.COLUMN_VERSION + " + 1"
+                + " WHERE " + BookEntry._ID + " = NEW." + BookEntry._ID + "; END;");
+
+        db.execSQL("DROP VIEW " + VIEW_BOOKS_WITH_SUPPLIERS + ";");
+        createBooksWithSuppliersView(db, BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAME,
+                BookEntry.COLUMN_PRICE, BookEntry.COLUMN_QUANTITY, BookEntry.COLUMN_SUPPLIER_ID,
+                BookEntry.COLUMN_LAST_MODIFIED, BookEntry.COLUMN_VERSION);
+    }
+
+    /**
+     * Version 10: books can have an ISBN, see {@link Isbn}. Existing books have none. The unique
+     * index finds a book by its ISBN without scanning the table, and allows any number of books
+     * without ISBN, as NULLs are distinct in a unique index.
+     */
+    private static void upgradeToVersion10(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN "
+                + BookEntry.COLUMN_ISBN + " TEXT;");
+        db.execSQL("CREATE UNIQUE INDEX " + INDEX_ISBN + " ON " + BookEntry.TABLE_NAME + " ("
+                + BookEntry.COLUMN_ISBN + ");");
+
+        // Changing the ISBN changes the book as well
+        db.execSQL("DROP TRIGGER books_last_modified_update;");
+        db.execSQL("DROP TRIGGER books_version_update;");
+        String changedColumns = BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_PRICE + ", "
+                + BookEntry.COLUMN_QUANTITY + ", " + BookEntry.COLUMN_SUPPLIER_ID + ", "
+                + BookEntry.COLUMN_ISBN;
+        db.execSQL("CREATE TRIGGER books_last_modified_update AFTER UPDATE OF " + changedColumns
+                + " ON " + BookEntry.TABLE_NAME
+                + " BEGIN UPDATE " + BookEntry.TABLE_NAME + " SET "
+                + BookEntry.COLUMN_LAST_MODIFIED + " = " + SQL_NOW_MILLIS
+                + " WHERE " + BookEntry._ID + " = NEW." + BookEntry._ID + "; END;");
+        db.execSQL("CREATE TRIGGER books_version_update AFTER UPDATE OF " + changedColumns
+                + " ON " + BookEntry.TABLE_NAME
+                + " BEGIN UPDATE " + BookEntry.TABLE_NAME + " SET "
+                + BookEntry.COLUMN_VERSION + " = OLD." + BookEntry.COLUMN_VERSION + " + 1"
+                + " WHERE " + BookEntry._ID + " = NEW." + BookEntry._ID + "; END;");
+
+        db.execSQL("DROP VIEW " + VIEW_BOOKS_WITH_SUPPLIERS + ";");
+        createBooksWithSuppliersView(db, BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAME,
+                BookEntry.COLUMN_PRICE, BookEntry.COLUMN_QUANTITY, BookEntry.COLUMN_SUPPLIER_ID,
+                BookEntry.COLUMN_LAST_MODIFIED, BookEntry.COLUMN_VERSION, BookEntry.COLUMN_ISBN);
+    }
+
+    /**
+     * Create the view of the books joined with their suppliers. Each version passes the columns
+     * of the Books table it had, so older migrations keep creating the view of their version.
+     *
+     * @param bookColumns the columns of the Books table, in the order of the view
+     */
+    private static void createBooksWithSuppliersView(SQLiteDatabase db, String... bookColumns) {
+        StringBuilder sql = new StringBuilder("CREATE VIEW " + VIEW_BOOKS_WITH_SUPPLIERS + " AS SELECT ");
+        for (String column : bookColumns) {
+            sql.append("b.").append(column).append(" AS ").append(column).append(", ");
+        }
+        sql.append("s." + SupplierEntry.COLUMN_NAME + " AS " + BookEntry.COLUMN_SUPPLIER_NAME + ", "
+                + "s." + SupplierEntry.COLUMN_PHONE + " AS " + BookEntry.COLUMN_SUPPLIER_PHONE
+                + " FROM " + BookEntry.TABLE_NAME + " b JOIN " + SupplierEntry.TABLE_NAME + " s"
+                + " ON s." + SupplierEntry._ID + " = b." + BookEntry.COLUMN_SUPPLIER_ID + ";");
+        db.execSQL(sql.toString());
+    }
 }
@@ -0,0 +1,75 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.AsyncTaskLoader;
+import android.content.ContentUris;
+import android.content.Context;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+/**
+ * Loads a single book through the {@link BookRepository}, so a recently read book is delivered
+ * straight from the cache. The book is reloaded whenever it changes in the provider.
+ */
+public class BookLoader extends AsyncTaskLoader<Book> {
+
+    private final long mId;
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private boolean mObserverRegistered = false;
+    private Book mBook;
+
+    public BookLoader(Context context, long id) {
+        super(context);
+        mId = id;
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserverRegistered) {
+            getContext().getContentResolver().registerContentObserver(
+                    ContentUris.withAppendedId(BookEntry.CONTENT_URI, mId), false, mObserver);
+            mObserverRegistered = true;
+        }
+
+        boolean contentChanged = takeContentChanged();
+        if (mBook == null && !contentChanged) {
+            mBook = BookRepository.getCachedBook(mId);
+        }
+        if (mBook != null) {
+            deliverResult(mBook);
+        }
+        if (mBook == null || contentChanged) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    public Book loadInBackground() {
+        return BookRepository.getBook(getContext().getContentResolver(), mId);
+    }
+
+    @Override
+    public void deliverResult(Book book) {
+        if (isReset()) {
+            return;
+        }
+        mBook = book;
+        if (isStarted()) {
+            super.deliverResult(book);
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        onStopLoading();
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserverRegistered = false;
+        }
+        mBook = null;
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.annotation.WorkerThread;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Loads the catalog in pages using the keyset pagination of {@link BookProvider}.
+ * All methods query the provider and therefore must not be called on the main thread.
+ */
+public class BookPageSource {
+
+    private final ContentResolver mContentResolver;
+    /**
+     * One of the sort orders of {@link BookEntry#QUERY_PARAMETER_SORT}
+     */
+    private final String mSort;
+    /**
+     * The catalog URI with the query parameters of all filters
+     */
+    private final Uri mCatalogUri;
+
+    public BookPageSource(ContentResolver contentResolver) {
+        this(contentResolver, BookEntry.SORT_NAME, BookEntry.CONTENT_URI);
+    }
+
+    private BookPageSource(ContentResolver contentResolver, String sort, Uri catalogUri) {
+        mContentResolver = contentResolver;
+        mSort = sort;
+        mCatalogUri = catalogUri;
+    }
+
+    /**
+     * @return a page source with the same filters that loads the catalog in the given sort order,
+     * one of the values of {@link BookEntry#QUERY_PARAMETER_SORT}
+     */
+    public BookPageSource sortedBy(String sort) {
+        return new BookPageSource(mContentResolver, sort, mCatalogUri);
+    }
+
+    /**
+     * @return a page source that additionally only loads the books matching the given filter,
+     * e.g. {@link BookEntry#QUERY_PARAMETER_IN_STOCK}
+     */
+    public BookPageSource filteredBy(String parameter, String value) {
+        return new BookPageSource(mContentResolver, mSort,
+                mCatalogUri.buildUpon().appendQueryParameter(parameter, value).build());
+    }
+
+    public String getSort() {
+        return mSort;
+    }
+
+    /**
+     * @return the value the given book is sorted by, which is the key of the pages
+     */
+    public String getSortKey(BookSummary book) {
+        switch (mSort) {
+            case BookEntry.SORT_PRICE:
+                return String.valueOf(book.getPrice());
+            case BookEntry.SORT_QUANTITY:
+                return String.valueOf(book.getQuantity());
+            case BookEntry.SORT_CHANGED:
+                return String.valueOf(book.getLastModified());
+            default:
+                return book.getProductName();
+        }
+    }
+
+    /**
+     * Load the first page of the catalog
+     */
+    @WorkerThread
+    public List<BookSummary> loadFirst(int pageSize) {
+        return load(pageUri(pageSize).build(), false);
+    }
+
+    /**
+     * Load the page that directly follows the given book
+     */
+    @WorkerThread
+    public List<BookSummary> loadAfter(BookSummary book, int pageSize) {
+        return load(pageUri(pageSize)
+                .appendQueryParameter(BookEntry.QUERY_PARAMETER_AFTER_KEY, getSortKey(book))
+                .appendQueryParameter(BookEntry.QUERY_PARAMETER_AFTER_ID, String.valueOf(book.getId()))
+                .build(), false);
+    }
+
+    /**
+     * Load the page that directly precedes the given book, in the order of the catalog
+     */
+    @WorkerThread
+    public List<BookSummary> loadBefore(BookSummary book, int pageSize) {
+        return load(pageUri(pageSize)
+                .appendQueryParameter(BookEntry.QUERY_PARAMETER_BEFORE_KEY, getSortKey(book))
+                .appendQueryParameter(BookEntry.QUERY_PARAMETER_BEFORE_ID, String.valueOf(book.getId()))
+                .build(), true);
+    }
+
+    /**
+     * Load a page starting with the given book itself, or the book that now takes its place
+     * in case it has been deleted
+     */
+    @WorkerThread
+    public List<BookSummary> loadFrom(BookSummary book, int pageSize) {
+        // IDs are integers, so every row after (key, id - 1) is at or after (key, id). Recently
+        // changed books are sorted in descending order, where (key, id + 1) comes right before.
+        long previousId = BookEntry.SORT_CHANGED.equals(mSort) ? book.getId() + 1 : book.getId() - 1;
+        return load(pageUri(pageSize)
+                .appendQueryParameter(BookEntry.QUERY_PARAMETER_AFTER_KEY, getSortKey(book))
+                .appendQueryParameter(BookEntry.QUERY_PARAMETER_AFTER_ID, String.valueOf(previousId))
+                .build(), false);
+    }
+
+    /**
+     * Search the catalog for books whose product or supplier name matches the given text
+     */
+    @WorkerThread
+    public List<BookSummary> search(String text, int limit) {
+        return load(BookEntry.SEARCH_URI.buildUpon()
+                .appendQueryParameter(BookEntry.QUERY_PARAMETER_SEARCH, text)
+                .appendQueryParameter(BookEntry.QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                .build(), false);
+    }
+
+    /**
+     * Load a single book
+     *
+     * @return the book or null if it does not exist (anymore) or does not match the filters
+     */
+    @WorkerThread
+    public BookSummary loadBook(long id) {
+        // The catalog is only read in pages, so the book is a page of one with the same filters
+        Uri uri = mCatalogUri.buildUpon()
+                .appendQueryParameter(BookEntry.QUERY_PARAMETER_LIMIT, String.valueOf(1))
+                .build();
+        List<BookSummary> books = load(uri, BookEntry._ID + "=?", new String[]{String.valueOf(id)}, false);
+        return books.isEmpty() ? null : books.get(0);
+    }
+
+    private Uri.Builder pageUri(int pageSize) {
+        return mCatalogUri.buildUpon()
+                .appendQueryParameter(BookEntry.QUERY_PARAMETER_SORT, mSort)
+                .appendQueryParameter(BookEntry.QUERY_PARAMETER_LIMIT, String.valueOf(pageSize));
+    }
+
+    private List<BookSummary> load(Uri uri, boolean reverse) {
+        return load(uri, null, null, reverse);
+    }
+
+    private List<BookSummary> load(Uri uri, String selection, String[] selectionArgs, boolean reverse) {
+        Cursor cursor = mContentResolver.query(uri, BookSummary.PROJECTION, selection, selectionArgs, null);
+        if (cursor == null) {
+            return Collections.emptyList();
+        }
+
+        List<BookSummary> page = new ArrayList<>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                page.add(BookSummary.fromCursor(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (reverse) {
+            Collections.reverse(page);
+        }
+        return page;
+    }
+}
@@ -1,18 +1,39 @@
 package com.example.android.inventoryapp.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.example.android.inventoryapp.R;
 import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookContract.StatsEntry;
+import com.example.android.inventoryapp.data.BookContract.StockMovementEntry;
+import com.example.android.inventoryapp.data.BookContract.SupplierEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 
 public class BookProvider extends ContentProvider {
@@ -29,6 +50,29 @@ public class BookProvider extends ContentProvider {
      * URI matcher code for the content URI for a single book in the books table
      */
     private static final int BOOK_ID = 101;
+    /**
+     * URI matcher code for the content URI to search the books table
+     */
+    private static final int BOOK_SEARCH = 102;
+    /**
+     * URI matcher code for the content URI of the inventory summary
+     */
+    private static final int BOOK_STATS = 103;
+    /**
+     * URI matcher code for the content URI of the stock movements of a single book
+     */
+    private static final int BOOK_MOVEMENTS = 104;
+    /**
+     * URI matcher code for the content URI of the book with a given ISBN
+     */
+    private static final int BOOK_ISBN = 105;
+    /**
+     * URI matcher codes for the content URIs of all suppliers, a single supplier and the books
+     * of a single supplier
+     */
+    private static final int SUPPLIERS = 200;
+    private static final int SUPPLIER_ID = 201;
+    private static final int SUPPLIER_BOOKS = 202;
     /**
      * UriMatcher object to match a content URI to a corresponding code.
      * The input passed into the constructor represents the code to return for the root URI.
@@ -36,6 +80,14 @@ public class BookProvider extends ContentProvider {
      */
     private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
 
+    /**
+     * URI matcher codes and their names in the metrics, see {@link BookEntry#METHOD_GET_METRICS}
+     */
+    private static final int[] METRICS_MATCH_CODES = {BOOKS, BOOK_ID, BOOK_SEARCH, BOOK_STATS,
+            BOOK_MOVEMENTS, BOOK_ISBN, SUPPLIERS, SUPPLIER_ID, SUPPLIER_BOOKS};
+    private static final String[] METRICS_MATCH_NAMES = {"BOOKS", "BOOK_ID", "BOOK_SEARCH", "BOOK_STATS",
+            "BOOK_MOVEMENTS", "BOOK_ISBN", "SUPPLIERS", "SUPPLIER_ID", "SUPPLIER_BOOKS"};
+
     // Static initializer. This is run the first time anything is called from this class.
     static {
         // The calls to addURI() go here, for all of the content URI patterns that the provider
@@ -43,19 +95,166 @@ public class BookProvider extends ContentProvider {
         // when a match is found.
         sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_BOOKS, BOOKS);
         sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_BOOKS + "/#", BOOK_ID);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_BOOKS + "/" + BookContract.PATH_SEARCH, BOOK_SEARCH);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_BOOKS + "/" + BookContract.PATH_STATS, BOOK_STATS);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_BOOKS + "/#/" + BookContract.PATH_MOVEMENTS, BOOK_MOVEMENTS);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_BOOKS + "/" + BookContract.PATH_ISBN + "/*", BOOK_ISBN);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_SUPPLIERS, SUPPLIERS);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_SUPPLIERS + "/#", SUPPLIER_ID);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_SUPPLIERS + "/#/" + BookContract.PATH_BOOKS, SUPPLIER_BOOKS);
     }
 
+    /**
+     * Adds a delta to the quantity of a single book in one statement. The last argument is the
+     * number of copies that have to be in stock for the change to be applied.
+     */
+    private static final String SQL_ADJUST_QUANTITY = "UPDATE " + BookEntry.TABLE_NAME
+            + " SET " + BookEntry.COLUMN_QUANTITY + " = " + BookEntry.COLUMN_QUANTITY + " + ?"
+            + " WHERE " + BookEntry._ID + " = ? AND " + BookEntry.COLUMN_QUANTITY + " >= ?";
+    /**
+     * The stock value is maintained by triggers, so it is read from the summary row instead of
+     * adding up all books
+     */
+    private static final String SQL_SELECT_STOCK_VALUE = "SELECT " + StatsEntry.COLUMN_STOCK_VALUE
+            + " FROM " + StatsEntry.TABLE_NAME;
+    private static final String SQL_SELECT_QUANTITY = "SELECT " + BookEntry.COLUMN_QUANTITY
+            + " FROM " + BookEntry.TABLE_NAME + " WHERE " + BookEntry._ID + " = ?";
+
+    /**
+     * The most frequent writes, which are executed through cached compiled statements
+     */
+    private static final String SQL_INSERT_BOOK = "INSERT INTO " + BookEntry.TABLE_NAME + " ("
+            + BookEntry.COLUMN_PRODUCT_NAME + ", "
+            + BookEntry.COLUMN_PRICE + ", "
+            + BookEntry.COLUMN_QUANTITY + ", "
+            + BookEntry.COLUMN_SUPPLIER_ID + ") VALUES (?, ?, ?, ?)";
+    private static final String SQL_UPDATE_QUANTITY = "UPDATE " + BookEntry.TABLE_NAME
+            + " SET " + BookEntry.COLUMN_QUANTITY + " = ? WHERE " + BookEntry._ID + " = ?";
+    private static final String SQL_UPDATE_PRICE = "UPDATE " + BookEntry.TABLE_NAME
+            + " SET " + BookEntry.COLUMN_PRICE + " = ? WHERE " + BookEntry._ID + " = ?";
+
+    /**
+     * Statements to find the supplier of a book by name, adding it if necessary, see
+     * {@link #resolveSupplier}
+     */
+    private static final String SQL_INSERT_SUPPLIER = "INSERT OR IGNORE INTO " + SupplierEntry.TABLE_NAME
+            + " (" + SupplierEntry.COLUMN_NAME + ", " + SupplierEntry.COLUMN_PHONE + ") VALUES (?, ?)";
+    private static final String SQL_SELECT_SUPPLIER_ID = "SELECT " + SupplierEntry._ID
+            + " FROM " + SupplierEntry.TABLE_NAME + " WHERE " + SupplierEntry.COLUMN_NAME + " = ?";
+    private static final String SQL_UPDATE_SUPPLIER_PHONE = "UPDATE " + SupplierEntry.TABLE_NAME
+            + " SET " + SupplierEntry.COLUMN_PHONE + " = ? WHERE " + SupplierEntry._ID + " = ? AND "
+            + SupplierEntry.COLUMN_PHONE + " <> ?";
+
+    /**
+     * Largest page that can be requested with {@link BookEntry#QUERY_PARAMETER_LIMIT}
+     */
+    private static final int MAX_PAGE_SIZE = 500;
+    /**
+     * If a write by selection changes more books than this, the URI of the whole table is
+     * notified instead of the URI of each changed book
+     */
+    private static final int MAX_ITEM_NOTIFICATIONS = 32;
+    /**
+     * Number of search results if no {@link BookEntry#QUERY_PARAMETER_LIMIT} is given
+     */
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+    /**
+     * Number of slow queries that are kept, see {@link BookEntry#METHOD_GET_SLOW_QUERIES}
+     */
+    private static final int SLOW_QUERY_LOG_SIZE = 32;
+
+    /**
+     * Catalog sort orders of {@link BookEntry#QUERY_PARAMETER_SORT} and their columns. Each
+     * column has a covering index on (column, _id), see {@link BookDbHelper}.
+     */
+    private static final Map<String, String> SORT_COLUMNS = new HashMap<>();
+
+    static {
+        SORT_COLUMNS.put(BookEntry.SORT_NAME, BookEntry.COLUMN_PRODUCT_NAME);
+        SORT_COLUMNS.put(BookEntry.SORT_PRICE, BookEntry.COLUMN_PRICE);
+        SORT_COLUMNS.put(BookEntry.SORT_QUANTITY, BookEntry.COLUMN_QUANTITY);
+        SORT_COLUMNS.put(BookEntry.SORT_CHANGED, BookEntry.COLUMN_LAST_MODIFIED);
+    }
+
+    /**
+     * Columns that can be queried from each table and view. Every column maps to itself.
+     */
+    private static final Map<String, Map<String, String>> PROJECTION_MAPS = new HashMap<>();
+
+    static {
+        String[] bookColumns = {BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAME, BookEntry.COLUMN_PRICE,
+                BookEntry.COLUMN_QUANTITY, BookEntry.COLUMN_SUPPLIER_ID, BookEntry.COLUMN_LAST_MODIFIED,
+                BookEntry.COLUMN_VERSION, BookEntry.COLUMN_ISBN};
+        PROJECTION_MAPS.put(BookEntry.TABLE_NAME, projectionMap(bookColumns));
+        Map<String, String> viewColumns = projectionMap(bookColumns);
+        viewColumns.putAll(projectionMap(BookEntry.COLUMN_SUPPLIER_NAME, BookEntry.COLUMN_SUPPLIER_PHONE));
+        PROJECTION_MAPS.put(BookDbHelper.VIEW_BOOKS_WITH_SUPPLIERS, viewColumns);
+        PROJECTION_MAPS.put(StatsEntry.TABLE_NAME, projectionMap(StatsEntry._ID,
+                StatsEntry.COLUMN_BOOK_COUNT, StatsEntry.COLUMN_TOTAL_UNITS,
+                StatsEntry.COLUMN_STOCK_VALUE, StatsEntry.COLUMN_OUT_OF_STOCK_COUNT));
+        PROJECTION_MAPS.put(StockMovementEntry.TABLE_NAME, projectionMap(StockMovementEntry._ID,
+                StockMovementEntry.COLUMN_BOOK_ID, StockMovementEntry.COLUMN_DELTA,
+                StockMovementEntry.COLUMN_TIME));
+        PROJECTION_MAPS.put(SupplierEntry.TABLE_NAME, projectionMap(SupplierEntry._ID,
+                SupplierEntry.COLUMN_NAME, SupplierEntry.COLUMN_PHONE));
+    }
+
+    /**
+     * Search conditions on the full-text index. The first one matches the product and supplier
+     * name, the second one is used for ranking and only matches the product name.
+     */
+    private static final String SELECTION_SEARCH = BookEntry._ID + " IN (SELECT docid FROM "
+            + BookDbHelper.TABLE_BOOKS_FTS + " WHERE " + BookDbHelper.TABLE_BOOKS_FTS + " MATCH ?)";
+    private static final String SORT_ORDER_SEARCH = BookEntry.COLUMN_PRODUCT_NAME + " LIKE ? ESCAPE '\\' DESC, "
+            + SELECTION_SEARCH + " DESC, "
+            + BookEntry.COLUMN_PRODUCT_NAME + " ASC, " + BookEntry._ID + " ASC";
+
     /**
      * Database helper
      */
     private BookDbHelper mDbHelper;
 
     /**
-     * Initialize the provider and the database helper object.
+     * Collects the change notifications of all writes, so a burst of writes or a batch
+     * only notifies each observer once
+     */
+    private ChangeNotifier mChangeNotifier;
+
+    /**
+     * Compiled statements, keyed by their SQL, so frequent writes skip building and compiling
+     * their SQL. A statement keeps its bindings until it is executed, so it is only used while
+     * holding its lock. That lock is only taken inside a transaction, so a thread never waits for
+     * the database connection while holding it.
+     */
+    private final HashMap<String, SQLiteStatement> mStatementCache = new HashMap<>();
+
+    /**
+     * Calls, rows and latencies of all operations
+     */
+    private final ProviderMetrics mMetrics = new ProviderMetrics(METRICS_MATCH_CODES, METRICS_MATCH_NAMES);
+
+    /**
+     * The latest slow queries and their query plans
+     */
+    private SlowQueryLog mSlowQueryLog;
+
+    /**
+     * Initialize the provider and the database helper object. This runs on the main thread while
+     * the app starts, so it must not open the database. That happens on the first access, or
+     * earlier in the background through {@link BookEntry#METHOD_WARM_UP}.
      */
     @Override
     public boolean onCreate() {
         mDbHelper = new BookDbHelper(getContext());
+        mChangeNotifier = new ChangeNotifier(getContext().getContentResolver(),
+                getContext().getResources().getInteger(R.integer.change_notification_window_ms));
+        mSlowQueryLog = new SlowQueryLog(SLOW_QUERY_LOG_SIZE,
+                getContext().getResources().getInteger(R.integer.slow_query_threshold_ms));
         return true;
     }
 
@@ -64,20 +263,44 @@ public class BookProvider extends ContentProvider {
      */
     @Override
     public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection, @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        long start = System.nanoTime();
+        // Figure out if the URI matcher can match the URI to a specific code
+        int match = sUriMatcher.match(uri);
+        try {
+            Cursor cursor = query(match, uri, projection, selection, selectionArgs, sortOrder);
+            // Counting the rows fills the first window of the cursor, which its first move would
+            // do anyway, so the latency includes reading the rows
+            mMetrics.record(ProviderMetrics.QUERY, match, start, cursor.getCount());
+            return cursor;
+        } catch (RuntimeException e) {
+            mMetrics.recordError(ProviderMetrics.QUERY, match, start);
+            throw e;
+        }
+    }
+
+    private Cursor query(int match, Uri uri, String[] projection, String selection,
+                         String[] selectionArgs, String sortOrder) {
+        //Every query names the columns it needs, so no caller moves all columns by accident
+        if (projection == null) {
+            throw new IllegalArgumentException("Query requires a projection for " + uri);
+        }
+
         // Get readable database
         SQLiteDatabase database = mDbHelper.getReadableDatabase();
 
         // This cursor will hold the result of the query
         Cursor cursor;
 
-        // Figure out if the URI matcher can match the URI to a specific code
-        int match = sUriMatcher.match(uri);
         switch (match) {
             case BOOKS:
-                // Query the whole table with the given
-                // projection, selection, selection arguments, and sort order.
-                cursor = database.query(BookEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                //The catalog can be large, so it is only read in pages of a bounded size
+                if (uri.getQueryParameter(BookEntry.QUERY_PARAMETER_LIMIT) == null) {
+                    throw new IllegalArgumentException("Query of all books requires a limit for " + uri);
+                }
+                if (sortOrder != null) {
+                    throw new IllegalArgumentException("Books are sorted by the sort parameter for " + uri);
+                }
+                cursor = queryPage(database, uri, projection, selection, selectionArgs);
                 break;
             case BOOK_ID:
                 // For the BOOK_ID code, extract out the ID from the URI.
@@ -92,8 +315,69 @@ public class BookProvider extends ContentProvider {
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
 
                 // Now query the table for the book with the selected id
-                cursor = database.query(BookEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                cursor = runQuery(database, booksTableFor(projection, selection, sortOrder), projection,
+                        selection, selectionArgs, sortOrder, null);
+                break;
+            case BOOK_ISBN:
+                // Served by the unique index on the ISBN, which is stored in the same form
+                selection = BookEntry.COLUMN_ISBN + "=?";
+                String table = booksTableFor(projection, selection, sortOrder);
+                String isbn;
+                try {
+                    isbn = Isbn.normalize(uri.getLastPathSegment());
+                } catch (IllegalArgumentException e) {
+                    // A misread or other barcode matches no book
+                    checkProjection(table, projection);
+                    cursor = new MatrixCursor(projection, 0);
+                    uri = BookEntry.CONTENT_URI;
+                    break;
+                }
+                cursor = runQuery(database, table, projection, selection, new String[]{isbn},
+                        sortOrder, null);
+                // A book can be given the ISBN later
+                uri = BookEntry.CONTENT_URI;
+                break;
+            case BOOK_SEARCH:
+                cursor = querySearch(database, uri, projection, selection, selectionArgs);
+                // Search results depend on all books, so reload them whenever any book changes
+                uri = BookEntry.CONTENT_URI;
+                break;
+            case BOOK_STATS:
+                // A single row maintained by triggers, so this does not depend on the number of books
+                cursor = runQuery(database, StatsEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        sortOrder, null);
+                // The figures change with every book
+                uri = BookEntry.CONTENT_URI;
+                break;
+            case BOOK_MOVEMENTS:
+                // Served by the index on the book ID of the movements
+                String bookId = uri.getPathSegments().get(1);
+                selection = DatabaseUtils.concatenateWhere(selection, StockMovementEntry.COLUMN_BOOK_ID + "=?");
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs, new String[]{bookId});
+                cursor = runQuery(database, StockMovementEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        sortOrder == null ? StockMovementEntry._ID : sortOrder, parseWindow(uri));
+                // New movements are written together with the quantity of the book
+                uri = Uri.withAppendedPath(BookEntry.CONTENT_URI, bookId);
+                break;
+            case SUPPLIERS:
+                cursor = runQuery(database, SupplierEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        sortOrder, parseWindow(uri));
+                break;
+            case SUPPLIER_ID:
+                selection = SupplierEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                cursor = runQuery(database, SupplierEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        sortOrder, null);
+                break;
+            case SUPPLIER_BOOKS:
+                // Served by the index on the supplier ID of the books
+                selection = DatabaseUtils.concatenateWhere(selection, BookEntry.COLUMN_SUPPLIER_ID + "=?");
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                        new String[]{uri.getPathSegments().get(1)});
+                cursor = runQuery(database, booksTableFor(projection, selection, sortOrder), projection,
+                        selection, selectionArgs, sortOrder, parseWindow(uri));
+                // The books of a supplier change with the books and with the supplier
+                uri = BookEntry.CONTENT_URI;
                 break;
             default:
                 throw new IllegalArgumentException("Cannot query unknown URI " + uri);
@@ -113,10 +397,24 @@ public class BookProvider extends ContentProvider {
     @Override
     @Nullable
     public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        long start = System.nanoTime();
         final int match = sUriMatcher.match(uri);
+        try {
+            Uri insertedUri = insert(match, uri, values);
+            mMetrics.record(ProviderMetrics.INSERT, match, start, insertedUri == null ? 0 : 1);
+            return insertedUri;
+        } catch (RuntimeException e) {
+            mMetrics.recordError(ProviderMetrics.INSERT, match, start);
+            throw e;
+        }
+    }
+
+    private Uri insert(int match, Uri uri, ContentValues values) {
         switch (match) {
             case BOOKS:
                 return insertBook(uri, values);
+            case SUPPLIERS:
+                return insertSupplier(uri, values);
             default:
                 throw new IllegalArgumentException("Insertion is not supported for " + uri);
         }
@@ -124,17 +422,38 @@ public class BookProvider extends ContentProvider {
 
     @Override
     public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        long start = System.nanoTime();
+        final int match = sUriMatcher.match(uri);
+        try {
+            int rowsDeleted = delete(match, uri, selection, selectionArgs);
+            mMetrics.record(ProviderMetrics.DELETE, match, start, rowsDeleted);
+            return rowsDeleted;
+        } catch (RuntimeException e) {
+            mMetrics.recordError(ProviderMetrics.DELETE, match, start);
+            throw e;
+        }
+    }
+
+    private int delete(int match, Uri uri, String selection, String[] selectionArgs) {
         // Get writeable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
         int rowsDeleted;
 
-        final int match = sUriMatcher.match(uri);
         switch (match) {
             case BOOKS:
                 // Delete all rows that match the selection and selection args
-                rowsDeleted = database.delete(BookEntry.TABLE_NAME, selection, selectionArgs);
+                List<Uri> changedUris;
+                selection = toBooksTableSelection(selection);
+                database.beginTransaction();
+                try {
+                    changedUris = findBookUris(database, selection, selectionArgs);
+                    rowsDeleted = database.delete(BookEntry.TABLE_NAME, selection, selectionArgs);
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
                 if (rowsDeleted > 0) {
-                    getContext().getContentResolver().notifyChange(uri, null);
+                    notifyChanges(changedUris);
                 }
                 return rowsDeleted;
             case BOOK_ID:
@@ -143,7 +462,20 @@ public class BookProvider extends ContentProvider {
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
                 rowsDeleted = database.delete(BookEntry.TABLE_NAME, selection, selectionArgs);
                 if (rowsDeleted > 0) {
-                    getContext().getContentResolver().notifyChange(uri, null);
+                    notifyChange(uri);
+                }
+                return rowsDeleted;
+            case SUPPLIER_ID:
+                // Suppliers can only be deleted once they have no books anymore
+                try {
+                    rowsDeleted = database.delete(SupplierEntry.TABLE_NAME, SupplierEntry._ID + "=?",
+                            new String[]{String.valueOf(ContentUris.parseId(uri))});
+                } catch (SQLiteConstraintException e) {
+                    Log.e(LOG_TAG, "Cannot delete supplier with books " + uri, e);
+                    return 0;
+                }
+                if (rowsDeleted > 0) {
+                    notifyChange(uri);
                 }
                 return rowsDeleted;
             default:
@@ -153,7 +485,19 @@ public class BookProvider extends ContentProvider {
 
     @Override
     public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection, @Nullable String[] selectionArgs) {
+        long start = System.nanoTime();
         final int match = sUriMatcher.match(uri);
+        try {
+            int rowsUpdated = update(match, uri, values, selection, selectionArgs);
+            mMetrics.record(ProviderMetrics.UPDATE, match, start, rowsUpdated);
+            return rowsUpdated;
+        } catch (RuntimeException e) {
+            mMetrics.recordError(ProviderMetrics.UPDATE, match, start);
+            throw e;
+        }
+    }
+
+    private int update(int match, Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         switch (match) {
             case BOOKS:
                 return updateBook(uri, values, selection, selectionArgs);
@@ -164,20 +508,170 @@ public class BookProvider extends ContentProvider {
                 selection = BookEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
                 return updateBook(uri, values, selection, selectionArgs);
+            case SUPPLIER_ID:
+                return updateSupplier(uri, values);
             default:
                 throw new IllegalArgumentException("Update is not supported for " + uri);
         }
     }
 
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        switch (method) {
+            case BookEntry.METHOD_ADJUST_QUANTITY:
+                if (arg == null || extras == null || !extras.containsKey(BookEntry.EXTRA_QUANTITY_DELTA)) {
+                    throw new IllegalArgumentException("Adjusting the quantity requires a book ID and a delta");
+                }
+                int delta = extras.getInt(BookEntry.EXTRA_QUANTITY_DELTA);
+                if (delta == 0) {
+                    throw new IllegalArgumentException("Quantity delta cannot be 0");
+                }
+                return adjustQuantity(parseBookId(arg), delta);
+            case BookEntry.METHOD_WARM_UP:
+                warmUp();
+                return null;
+            case BookEntry.METHOD_GET_NOTIFICATION_STATS:
+                Bundle stats = new Bundle();
+                putNotificationStats(stats);
+                return stats;
+            case BookEntry.METHOD_GET_METRICS:
+                Bundle metrics = new Bundle();
+                mMetrics.writeTo(metrics);
+                putNotificationStats(metrics);
+                return metrics;
+            case BookEntry.METHOD_GET_SLOW_QUERIES:
+                Bundle slowQueries = new Bundle();
+                mSlowQueryLog.writeTo(slowQueries);
+                return slowQueries;
+            case BookEntry.METHOD_CONFIGURE_SLOW_QUERY_LOG:
+                if (extras == null) {
+                    throw new IllegalArgumentException("Configuring the slow query log requires extras");
+                }
+                if (extras.containsKey(BookEntry.EXTRA_SLOW_QUERY_THRESHOLD_MS)) {
+                    mSlowQueryLog.setThresholdMillis(extras.getLong(BookEntry.EXTRA_SLOW_QUERY_THRESHOLD_MS));
+                }
+                if (extras.containsKey(BookEntry.EXTRA_CHECK_FULL_SCANS)) {
+                    mSlowQueryLog.setCheckFullScans(extras.getBoolean(BookEntry.EXTRA_CHECK_FULL_SCANS));
+                }
+                return null;
+            case BookEntry.METHOD_GET_STOCK_VALUE:
+                Bundle result = new Bundle();
+                result.putLong(BookEntry.EXTRA_STOCK_VALUE, DatabaseUtils.longForQuery(
+                        mDbHelper.getReadableDatabase(), SQL_SELECT_STOCK_VALUE, null));
+                return result;
+            case StockMovementEntry.METHOD_GET_QUANTITY_AT:
+                if (arg == null || extras == null || !extras.containsKey(StockMovementEntry.EXTRA_TIME)) {
+                    throw new IllegalArgumentException("Quantity at a time requires a book ID and a time");
+                }
+                Bundle quantity = new Bundle();
+                quantity.putInt(BookEntry.EXTRA_QUANTITY, (int) StockLedger.getQuantityAt(
+                        mDbHelper.getReadableDatabase(), parseBookId(arg),
+                        extras.getLong(StockMovementEntry.EXTRA_TIME)));
+                return quantity;
+            case StockMovementEntry.METHOD_COMPACT:
+                if (extras == null || !extras.containsKey(StockMovementEntry.EXTRA_TIME)) {
+                    throw new IllegalArgumentException("Compaction requires a time");
+                }
+                return compactStockMovements(extras.getLong(StockMovementEntry.EXTRA_TIME));
+            default:
+                return super.call(method, arg, extras);
+        }
+    }
+
+    /**
+     * Insert all given books in a single transaction, so a large import only pays for one
+     * commit and sends one change notification instead of one per row.
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        long start = System.nanoTime();
+        final int match = sUriMatcher.match(uri);
+        try {
+            int rowsInserted = bulkInsert(match, uri, values);
+            mMetrics.record(ProviderMetrics.BULK_INSERT, match, start, rowsInserted);
+            return rowsInserted;
+        } catch (RuntimeException e) {
+            mMetrics.recordError(ProviderMetrics.BULK_INSERT, match, start);
+            throw e;
+        }
+    }
+
+    private int bulkInsert(int match, Uri uri, ContentValues[] values) {
+        if (match != BOOKS) {
+            throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        int rowsInserted = 0;
+        boolean committed = false;
+
+        mChangeNotifier.beginBatch();
+        database.beginTransaction();
+        try {
+            for (ContentValues bookValues : values) {
+                if (insertBook(uri, bookValues) != null) {
+                    rowsInserted++;
+                }
+            }
+            database.setTransactionSuccessful();
+            committed = true;
+        } finally {
+            database.endTransaction();
+            mChangeNotifier.endBatch(committed);
+        }
+
+        return rowsInserted;
+    }
+
+    /**
+     * Apply all operations in a single transaction. Either all operations are committed or, if one
+     * of them fails, none of them is. Listeners are notified once per changed URI after the batch
+     * was committed.
+     */
+    @Override
+    @NonNull
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        ContentProviderResult[] results;
+        boolean committed = false;
+
+        mChangeNotifier.beginBatch();
+        database.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+            committed = true;
+        } finally {
+            database.endTransaction();
+            mChangeNotifier.endBatch(committed);
+        }
+
+        return results;
+    }
+
     @Nullable
     @Override
     public String getType(Uri uri) {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case BOOKS:
+            case BOOK_SEARCH:
                 return BookEntry.CONTENT_LIST_TYPE;
             case BOOK_ID:
+            case BOOK_ISBN:
                 return BookEntry.CONTENT_ITEM_TYPE;
+            case BOOK_STATS:
+                return StatsEntry.CONTENT_ITEM_TYPE;
+            case BOOK_MOVEMENTS:
+                return StockMovementEntry.CONTENT_LIST_TYPE;
+            case SUPPLIERS:
+                return SupplierEntry.CONTENT_LIST_TYPE;
+            case SUPPLIER_ID:
+                return SupplierEntry.CONTENT_ITEM_TYPE;
+            case SUPPLIER_BOOKS:
+                return BookEntry.CONTENT_LIST_TYPE;
             default:
                 throw new IllegalStateException("Unknown URI " + uri + " with match " + match);
         }
@@ -193,15 +687,10 @@ public class BookProvider extends ContentProvider {
             throw new IllegalArgumentException("Product requires a valid name");
         }
 
-        //Check if the price is valid, i.e. larger than 0 and not null
+        //Check if the price is valid, i.e. a non-negative integer number of cents
         //As there is a default value for the price, it does not need to be included in the ContentValues
         if (values.containsKey(BookEntry.COLUMN_PRICE)) {
-            Float price = values.getAsFloat(BookEntry.COLUMN_PRICE);
-            if (price == null) {
-                throw new IllegalArgumentException("Price cannot be set as null and must be a float");
-            } else if (price < 0) {
-                throw new IllegalArgumentException("Product requires a valid price");
-            }
+            checkPrice(values);
         }
 
         //Check if the quantity is valid, i.e. not negative and not null
@@ -215,6 +704,19 @@ public class BookProvider extends ContentProvider {
             }
         }
 
+        //The modification time is set by the database whenever the book changes
+        if (values.containsKey(BookEntry.COLUMN_LAST_MODIFIED)) {
+            throw new IllegalArgumentException("Modification time cannot be written");
+        }
+
+        //The version is incremented by the database whenever the book changes
+        if (values.containsKey(BookEntry.COLUMN_VERSION)) {
+            throw new IllegalArgumentException("Version cannot be written");
+        }
+
+        //Check if the ISBN is valid and store it as 13 digits. A book does not need to have one.
+        values = normalizeIsbn(values);
+
         //Check if the supplier name is valid, i.e. is not null or an empty string
         String supplierName = values.getAsString(BookEntry.COLUMN_SUPPLIER_NAME);
         if (TextUtils.isEmpty(supplierName)) {
@@ -231,20 +733,46 @@ public class BookProvider extends ContentProvider {
         // Get readable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        long id = database.insert(BookEntry.TABLE_NAME, null, values);
+        long id;
+        Uri bookUri = null;
+        boolean committed = false;
+        mChangeNotifier.beginBatch();
+        database.beginTransaction();
+        try {
+            long supplierId = resolveSupplier(database, supplierName, supplierPhone);
+            if (values.size() == 5 && values.containsKey(BookEntry.COLUMN_PRICE)
+                    && values.containsKey(BookEntry.COLUMN_QUANTITY)) {
+                // All columns are given, which is the case for every book entered in the app
+                id = insertAllColumns(database, productName, values.getAsLong(BookEntry.COLUMN_PRICE),
+                        values.getAsLong(BookEntry.COLUMN_QUANTITY), supplierId);
+            } else {
+                ContentValues bookValues = new ContentValues(values);
+                bookValues.remove(BookEntry.COLUMN_SUPPLIER_NAME);
+                bookValues.remove(BookEntry.COLUMN_SUPPLIER_PHONE);
+                bookValues.put(BookEntry.COLUMN_SUPPLIER_ID, supplierId);
+                id = database.insert(BookEntry.TABLE_NAME, null, bookValues);
+            }
 
-        //Check if the row was successfully inserted
-        if (id == -1) {
-            Log.e(LOG_TAG, "Failed to insert row for " + uri);
-            return null;
-        }
+            //Check if the row was successfully inserted
+            if (id == -1) {
+                Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            } else {
+                // Once we know the ID of the new row in the table,
+                // return the new URI with the ID appended to the end of it
+                bookUri = ContentUris.withAppendedId(uri, id);
 
-        //Notify any listeners to a change in the table
-        getContext().getContentResolver().notifyChange(uri, null);
+                //Notify any listeners to a change in the table. Listeners of the whole table are
+                //notified of changes to its rows as well.
+                notifyChange(bookUri);
+            }
+            database.setTransactionSuccessful();
+            committed = true;
+        } finally {
+            database.endTransaction();
+            mChangeNotifier.endBatch(committed);
+        }
 
-        // Once we know the ID of the new row in the table,
-        // return the new URI with the ID appended to the end of it
-        return ContentUris.withAppendedId(uri, id);
+        return bookUri;
     }
 
     private int updateBook(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
@@ -263,14 +791,9 @@ public class BookProvider extends ContentProvider {
             }
         }
 
-        //Check if the price is valid, i.e. larger than 0 and not null
+        //Check if the price is valid, i.e. a non-negative integer number of cents
         if (values.containsKey(BookEntry.COLUMN_PRICE)) {
-            Float price = values.getAsFloat(BookEntry.COLUMN_PRICE);
-            if (price == null) {
-                throw new IllegalArgumentException("Price cannot be set as null and must be a float");
-            } else if (price < 0) {
-                throw new IllegalArgumentException("Product requires a valid price");
-            }
+            checkPrice(values);
         }
 
         //Check if the quantity is valid, i.e. not negative and not null
@@ -283,6 +806,19 @@ public class BookProvider extends ContentProvider {
             }
         }
 
+        //The modification time is set by the database whenever the book changes
+        if (values.containsKey(BookEntry.COLUMN_LAST_MODIFIED)) {
+            throw new IllegalArgumentException("Modification time cannot be written");
+        }
+
+        //The version is incremented by the database whenever the book changes
+        if (values.containsKey(BookEntry.COLUMN_VERSION)) {
+            throw new IllegalArgumentException("Version cannot be written");
+        }
+
+        //Check if the ISBN is valid and store it as 13 digits. It can be removed with null.
+        values = normalizeIsbn(values);
+
         //Check if the supplier name is valid, i.e. is not null or an empty string
         if (values.containsKey(BookEntry.COLUMN_SUPPLIER_NAME)) {
             String supplierName = values.getAsString(BookEntry.COLUMN_SUPPLIER_NAME);
@@ -303,13 +839,827 @@ public class BookProvider extends ContentProvider {
         // Get writable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        int rowsUpdated = database.update(BookEntry.TABLE_NAME, values, selection, selectionArgs);
+        //Only update the book if it still has the version the caller read
+        String expectedVersion = uri.getQueryParameter(BookEntry.QUERY_PARAMETER_EXPECTED_VERSION);
+        if (expectedVersion != null) {
+            if (sUriMatcher.match(uri) != BOOK_ID) {
+                throw new IllegalArgumentException("Expected version requires a single book for " + uri);
+            }
+            try {
+                Long.parseLong(expectedVersion);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected version must be an integer for " + uri);
+            }
+            selection = DatabaseUtils.concatenateWhere(selection, BookEntry.COLUMN_VERSION + "=?");
+            selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs, new String[]{expectedVersion});
+        }
+
+        int rowsUpdated;
+        List<Uri> changedUris = Collections.singletonList(uri);
+        if (expectedVersion == null && sUriMatcher.match(uri) == BOOK_ID && values.size() == 1
+                && values.containsKey(BookEntry.COLUMN_QUANTITY)) {
+            rowsUpdated = updateQuantity(database, ContentUris.parseId(uri),
+                    values.getAsLong(BookEntry.COLUMN_QUANTITY));
+        } else if (expectedVersion == null && sUriMatcher.match(uri) == BOOK_ID && values.size() == 1
+                && values.containsKey(BookEntry.COLUMN_PRICE)) {
+            rowsUpdated = updatePrice(database, ContentUris.parseId(uri),
+                    values.getAsLong(BookEntry.COLUMN_PRICE));
+        } else {
+            selection = toBooksTableSelection(selection);
+            boolean committed = false;
+            mChangeNotifier.beginBatch();
+            database.beginTransaction();
+            try {
+                // A stale book is detected before its supplier is changed, so there is nothing to
+                // roll back and the transaction always commits, even when it is nested in a batch
+                if (expectedVersion != null && DatabaseUtils.queryNumEntries(database,
+                        BookEntry.TABLE_NAME, selection, selectionArgs) == 0) {
+                    rowsUpdated = 0;
+                } else {
+                    // A taken ISBN fails the whole batch visibly instead of rolling it back silently
+                    String isbn = values.getAsString(BookEntry.COLUMN_ISBN);
+                    if (isbn != null) {
+                        checkIsbnAvailable(database, isbn, selection, selectionArgs, uri);
+                    }
+                    ContentValues bookValues = toBookValues(database, values, selection, selectionArgs);
+                    if (sUriMatcher.match(uri) == BOOKS) {
+                        changedUris = findBookUris(database, selection, selectionArgs);
+                    }
+                    if (bookValues.size() > 0) {
+                        rowsUpdated = database.update(BookEntry.TABLE_NAME, bookValues, selection, selectionArgs);
+                    } else {
+                        // Only the phone number of the suppliers was changed
+                        rowsUpdated = (int) DatabaseUtils.queryNumEntries(database, BookEntry.TABLE_NAME,
+                                selection, selectionArgs);
+                    }
+                }
+                database.setTransactionSuccessful();
+                committed = true;
+            } finally {
+                database.endTransaction();
+                mChangeNotifier.endBatch(committed);
+            }
+        }
 
         //Notify listeners of a change in the database
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChanges(changedUris);
+        }
+
+        return rowsUpdated;
+    }
+
+    /**
+     * Replace the supplier name and phone number in the values of a book update by the ID of the
+     * supplier with that name. A phone number without a name changes the phone number of the
+     * current suppliers of the selected books. Must be called inside a batch transaction.
+     *
+     * @return the values to write to the Books table
+     */
+    private ContentValues toBookValues(SQLiteDatabase database, ContentValues values,
+                                       String selection, String[] selectionArgs) {
+        if (!values.containsKey(BookEntry.COLUMN_SUPPLIER_NAME)
+                && !values.containsKey(BookEntry.COLUMN_SUPPLIER_PHONE)) {
+            return values;
+        }
+        ContentValues bookValues = new ContentValues(values);
+        String supplierName = bookValues.getAsString(BookEntry.COLUMN_SUPPLIER_NAME);
+        String supplierPhone = bookValues.getAsString(BookEntry.COLUMN_SUPPLIER_PHONE);
+        bookValues.remove(BookEntry.COLUMN_SUPPLIER_NAME);
+        bookValues.remove(BookEntry.COLUMN_SUPPLIER_PHONE);
+
+        if (supplierName != null) {
+            bookValues.put(BookEntry.COLUMN_SUPPLIER_ID,
+                    resolveSupplier(database, supplierName, supplierPhone));
+        } else {
+            String supplierIds = "SELECT " + BookEntry.COLUMN_SUPPLIER_ID + " FROM " + BookEntry.TABLE_NAME
+                    + (TextUtils.isEmpty(selection) ? "" : " WHERE " + selection);
+            ContentValues supplierValues = new ContentValues();
+            supplierValues.put(SupplierEntry.COLUMN_PHONE, supplierPhone);
+            if (database.update(SupplierEntry.TABLE_NAME, supplierValues,
+                    SupplierEntry._ID + " IN (" + supplierIds + ")", selectionArgs) > 0) {
+                notifyChange(SupplierEntry.CONTENT_URI);
+                notifyChange(BookEntry.CONTENT_URI);
+            }
+        }
+        return bookValues;
+    }
+
+    /**
+     * Find the supplier with the given name, adding it if it does not exist yet. A different
+     * phone number replaces the one of the existing supplier, which changes it for all of its
+     * books at once. Must be called inside a batch transaction.
+     *
+     * @param phone the phone number of the supplier or null to keep the current one
+     * @return the ID of the supplier
+     */
+    private long resolveSupplier(SQLiteDatabase database, String name, @Nullable String phone) {
+        long id;
+        if (phone != null) {
+            SQLiteStatement statement = getStatement(database, SQL_INSERT_SUPPLIER);
+            synchronized (statement) {
+                statement.bindString(1, name);
+                statement.bindString(2, phone);
+                id = statement.executeInsert();
+            }
+            if (id != -1) {
+                notifyChange(ContentUris.withAppendedId(SupplierEntry.CONTENT_URI, id));
+                return id;
+            }
+        }
+
+        SQLiteStatement statement = getStatement(database, SQL_SELECT_SUPPLIER_ID);
+        synchronized (statement) {
+            statement.bindString(1, name);
+            try {
+                id = statement.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                throw new IllegalArgumentException("Supplier requires a valid phone number");
+            }
+        }
+
+        if (phone != null) {
+            int rowsUpdated;
+            statement = getStatement(database, SQL_UPDATE_SUPPLIER_PHONE);
+            synchronized (statement) {
+                statement.bindString(1, phone);
+                statement.bindLong(2, id);
+                statement.bindString(3, phone);
+                rowsUpdated = statement.executeUpdateDelete();
+            }
+            if (rowsUpdated > 0) {
+                // The phone number changed for all books of the supplier
+                notifyChange(ContentUris.withAppendedId(SupplierEntry.CONTENT_URI, id));
+                notifyChange(BookEntry.CONTENT_URI);
+            }
+        }
+        return id;
+    }
+
+    private Uri insertSupplier(Uri uri, ContentValues values) {
+        checkSupplier(values, true);
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        long id = database.insert(SupplierEntry.TABLE_NAME, null, values);
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
         }
+        Uri supplierUri = ContentUris.withAppendedId(uri, id);
+        notifyChange(supplierUri);
+        return supplierUri;
+    }
 
+    /**
+     * Change the name or phone number of a supplier with a single row update, which applies to
+     * all of its books
+     */
+    private int updateSupplier(Uri uri, ContentValues values) {
+        if (values.size() == 0) {
+            return 0;
+        }
+        checkSupplier(values, false);
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        int rowsUpdated;
+        try {
+            rowsUpdated = database.update(SupplierEntry.TABLE_NAME, values, SupplierEntry._ID + "=?",
+                    new String[]{String.valueOf(ContentUris.parseId(uri))});
+        } catch (SQLiteConstraintException e) {
+            Log.e(LOG_TAG, "Supplier name already exists " + uri, e);
+            return 0;
+        }
+        if (rowsUpdated != 0) {
+            notifyChange(uri);
+            notifyChange(BookEntry.CONTENT_URI);
+        }
         return rowsUpdated;
     }
+
+    /**
+     * Check the name and phone number of a supplier
+     *
+     * @param required true if both have to be given
+     */
+    private static void checkSupplier(ContentValues values, boolean required) {
+        for (String key : values.keySet()) {
+            if (!key.equals(SupplierEntry.COLUMN_NAME) && !key.equals(SupplierEntry.COLUMN_PHONE)) {
+                throw new IllegalArgumentException("Unknown supplier column " + key);
+            }
+        }
+        if ((required || values.containsKey(SupplierEntry.COLUMN_NAME))
+                && TextUtils.isEmpty(values.getAsString(SupplierEntry.COLUMN_NAME))) {
+            throw new IllegalArgumentException("Supplier requires a valid name");
+        }
+        if ((required || values.containsKey(SupplierEntry.COLUMN_PHONE))
+                && TextUtils.isEmpty(values.getAsString(SupplierEntry.COLUMN_PHONE))) {
+            throw new IllegalArgumentException("Supplier requires a valid phone number");
+        }
+    }
+
+    private static Map<String, String> projectionMap(String... columns) {
+        Map<String, String> projectionMap = new HashMap<>();
+        for (String column : columns) {
+            projectionMap.put(column, column);
+        }
+        return projectionMap;
+    }
+
+    /**
+     * Queries that do not involve the supplier name or phone number read the Books table
+     * directly, so they don't pay for the join with the suppliers and can be answered from the
+     * covering catalog index. All others read the view that joins each book with its supplier.
+     */
+    private static String booksTableFor(String[] projection, String selection, String sortOrder) {
+        if (mentionsSupplier(selection) || mentionsSupplier(sortOrder)) {
+            return BookDbHelper.VIEW_BOOKS_WITH_SUPPLIERS;
+        }
+        for (String column : projection) {
+            if (mentionsSupplier(column)) {
+                return BookDbHelper.VIEW_BOOKS_WITH_SUPPLIERS;
+            }
+        }
+        return BookEntry.TABLE_NAME;
+    }
+
+    /**
+     * Writes go to the Books table, which only has the supplier ID. A selection on the supplier
+     * name or phone number is therefore evaluated on the view.
+     */
+    private static String toBooksTableSelection(String selection) {
+        if (!mentionsSupplier(selection)) {
+            return selection;
+        }
+        return BookEntry._ID + " IN (SELECT " + BookEntry._ID + " FROM "
+                + BookDbHelper.VIEW_BOOKS_WITH_SUPPLIERS + " WHERE " + selection + ")";
+    }
+
+    private static boolean mentionsSupplier(String sql) {
+        return sql != null && (sql.contains(BookEntry.COLUMN_SUPPLIER_NAME)
+                || sql.contains(BookEntry.COLUMN_SUPPLIER_PHONE));
+    }
+
+    /**
+     * Notify listeners of a change to the given URI. The notification is coalesced with other
+     * notifications of the same window or batch, see {@link ChangeNotifier}.
+     */
+    private void notifyChange(Uri uri) {
+        mChangeNotifier.notifyChange(uri);
+    }
+
+    private void notifyChanges(List<Uri> uris) {
+        for (Uri uri : uris) {
+            mChangeNotifier.notifyChange(uri);
+        }
+    }
+
+    /**
+     * Put the figures of {@link BookEntry#METHOD_GET_NOTIFICATION_STATS} into the given Bundle
+     */
+    private void putNotificationStats(Bundle bundle) {
+        long requested = mChangeNotifier.getRequestedCount();
+        long delivered = mChangeNotifier.getDeliveredCount();
+        bundle.putLong(BookEntry.EXTRA_NOTIFICATIONS_REQUESTED, requested);
+        bundle.putLong(BookEntry.EXTRA_NOTIFICATIONS_DELIVERED, delivered);
+        bundle.putLong(BookEntry.EXTRA_NOTIFICATIONS_SUPPRESSED, requested - delivered);
+    }
+
+    /**
+     * Find the books a write with the given selection is going to change, so only their URIs
+     * need to be notified. Must be called in the same transaction as the write.
+     *
+     * @return the URIs of the books, or the URI of the whole table if there are too many of them
+     */
+    private List<Uri> findBookUris(SQLiteDatabase database, String selection, String[] selectionArgs) {
+        Cursor cursor = database.query(BookEntry.TABLE_NAME, new String[]{BookEntry._ID},
+                selection, selectionArgs, null, null, null, String.valueOf(MAX_ITEM_NOTIFICATIONS + 1));
+        try {
+            if (cursor.getCount() > MAX_ITEM_NOTIFICATIONS) {
+                return Collections.singletonList(BookEntry.CONTENT_URI);
+            }
+            List<Uri> uris = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                uris.add(ContentUris.withAppendedId(BookEntry.CONTENT_URI, cursor.getLong(0)));
+            }
+            return uris;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Add the delta to the quantity of the given book without reading it first, so concurrent
+     * sales of the same book cannot overwrite each other.
+     *
+     * @return a Bundle with the new quantity or null if the quantity was not changed
+     */
+    private Bundle adjustQuantity(long id, int delta) {
+        long start = System.nanoTime();
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        long newQuantity;
+
+        database.beginTransaction();
+        try {
+            SQLiteStatement statement = getStatement(database, SQL_ADJUST_QUANTITY);
+            synchronized (statement) {
+                statement.bindLong(1, delta);
+                statement.bindLong(2, id);
+                statement.bindLong(3, Math.max(0, -delta));
+                if (statement.executeUpdateDelete() == 0) {
+                    //Either the book does not exist or there are not enough copies in stock
+                    mMetrics.record(ProviderMetrics.UPDATE, BOOK_ID, start, 0);
+                    return null;
+                }
+            }
+
+            statement = getStatement(database, SQL_SELECT_QUANTITY);
+            synchronized (statement) {
+                statement.bindLong(1, id);
+                newQuantity = statement.simpleQueryForLong();
+            }
+            database.setTransactionSuccessful();
+        } catch (RuntimeException e) {
+            mMetrics.recordError(ProviderMetrics.UPDATE, BOOK_ID, start);
+            throw e;
+        } finally {
+            database.endTransaction();
+        }
+
+        notifyChange(ContentUris.withAppendedId(BookEntry.CONTENT_URI, id));
+        mMetrics.record(ProviderMetrics.UPDATE, BOOK_ID, start, 1);
+
+        Bundle result = new Bundle();
+        result.putInt(BookEntry.EXTRA_QUANTITY, (int) newQuantity);
+        return result;
+    }
+
+    /**
+     * Open the database, which creates or migrates it if necessary, and compile the statements
+     * of the most frequent writes into the statement cache
+     */
+    private void warmUp() {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            getStatement(database, SQL_INSERT_BOOK);
+            getStatement(database, SQL_UPDATE_QUANTITY);
+            getStatement(database, SQL_ADJUST_QUANTITY);
+            getStatement(database, SQL_SELECT_QUANTITY);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Roll the stock movements up to the given time into snapshots. The quantities do not
+     * change, so no observers are notified.
+     */
+    private Bundle compactStockMovements(long time) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        int compacted;
+        database.beginTransaction();
+        try {
+            compacted = StockLedger.compact(database, time);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(StockMovementEntry.EXTRA_MOVEMENTS_COMPACTED, compacted);
+        return result;
+    }
+
+    /**
+     * Query one page of books using keyset pagination, see {@link BookEntry#QUERY_PARAMETER_LIMIT}.
+     * Unlike LIMIT/OFFSET the cost of a page does not grow with its position in the table, and
+     * as the rows are read in the order of the index of the sort column they are never sorted.
+     */
+    private Cursor queryPage(SQLiteDatabase database, Uri uri, String[] projection,
+                             String selection, String[] selectionArgs) {
+        int limit = parseLimit(uri, 0);
+        String table = booksTableFor(projection, selection, null);
+        String sortParameter = uri.getQueryParameter(BookEntry.QUERY_PARAMETER_SORT);
+        String sortColumn = SORT_COLUMNS.get(sortParameter == null ? BookEntry.SORT_NAME : sortParameter);
+        if (sortColumn == null) {
+            throw new IllegalArgumentException("Unknown sort order " + sortParameter + " for " + uri);
+        }
+        // Recently changed books come first, all other orders are ascending
+        boolean descending = BookEntry.COLUMN_LAST_MODIFIED.equals(sortColumn);
+
+        Selection where = new Selection(selection, selectionArgs);
+        addFilters(uri, sortColumn, where);
+        String afterId = uri.getQueryParameter(BookEntry.QUERY_PARAMETER_AFTER_ID);
+        String beforeId = uri.getQueryParameter(BookEntry.QUERY_PARAMETER_BEFORE_ID);
+
+        if (afterId != null) {
+            String afterKey = uri.getQueryParameter(BookEntry.QUERY_PARAMETER_AFTER_KEY);
+            if (afterKey == null) {
+                throw new IllegalArgumentException("Page after an ID requires a key for " + uri);
+            }
+            where.add(keysetSelection(sortColumn, descending), afterKey, afterKey, afterId);
+        } else if (beforeId != null) {
+            String beforeKey = uri.getQueryParameter(BookEntry.QUERY_PARAMETER_BEFORE_KEY);
+            if (beforeKey == null) {
+                throw new IllegalArgumentException("Page before an ID requires a key for " + uri);
+            }
+            where.add(keysetSelection(sortColumn, !descending), beforeKey, beforeKey, beforeId);
+            // Previous pages are read backwards from the given row
+            descending = !descending;
+        }
+
+        String direction = descending ? " DESC" : " ASC";
+        String sortOrder = sortColumn + direction + ", " + BookEntry._ID + direction;
+        return runQuery(database, table, projection, where.mSelection, where.mSelectionArgs,
+                sortOrder, limitClause(uri, limit));
+    }
+
+    /**
+     * Keyset condition for the rows after a given (key, _id) pair in the given order. It is
+     * written so that the range on the sort column can be served by its index. Keys of integer
+     * columns are passed as strings, so they are cast back to integers to compare as numbers.
+     */
+    private static String keysetSelection(String sortColumn, boolean descending) {
+        String key = BookEntry.COLUMN_PRODUCT_NAME.equals(sortColumn) ? "?" : "CAST(? AS INTEGER)";
+        String inclusive = descending ? " <= " : " >= ";
+        String exclusive = descending ? " < " : " > ";
+        return sortColumn + inclusive + key + " AND ("
+                + sortColumn + exclusive + key + " OR " + BookEntry._ID + exclusive + "?)";
+    }
+
+    /**
+     * Add the filters of {@link BookEntry#QUERY_PARAMETER_IN_STOCK},
+     * {@link BookEntry#QUERY_PARAMETER_SUPPLIER_ID}, {@link BookEntry#QUERY_PARAMETER_MIN_PRICE}
+     * and {@link BookEntry#QUERY_PARAMETER_MAX_PRICE} to the selection.
+     * <p>
+     * Filters on other columns than the sort column are prefixed with a unary plus, which keeps
+     * SQLite from answering them with another index and then sorting the result. The rows are
+     * read from the index of the sort column instead and filtered on the way, which stops as
+     * soon as a page is full.
+     *
+     * @param sortColumn the column the rows are sorted by
+     */
+    private static void addFilters(Uri uri, String sortColumn, Selection where) {
+        if (Boolean.parseBoolean(uri.getQueryParameter(BookEntry.QUERY_PARAMETER_IN_STOCK))) {
+            where.add(filterColumn(BookEntry.COLUMN_QUANTITY, sortColumn) + " > 0");
+        }
+        String supplierId = uri.getQueryParameter(BookEntry.QUERY_PARAMETER_SUPPLIER_ID);
+        if (supplierId != null) {
+            where.add(filterColumn(BookEntry.COLUMN_SUPPLIER_ID, sortColumn) + " = ?",
+                    String.valueOf(parseLong(uri, supplierId)));
+        }
+        String minPrice = uri.getQueryParameter(BookEntry.QUERY_PARAMETER_MIN_PRICE);
+        if (minPrice != null) {
+            where.add(filterColumn(BookEntry.COLUMN_PRICE, sortColumn) + " >= CAST(? AS INTEGER)",
+                    String.valueOf(parseLong(uri, minPrice)));
+        }
+        String maxPrice = uri.getQueryParameter(BookEntry.QUERY_PARAMETER_MAX_PRICE);
+        if (maxPrice != null) {
+            where.add(filterColumn(BookEntry.COLUMN_PRICE, sortColumn) + " <= CAST(? AS INTEGER)",
+                    String.valueOf(parseLong(uri, maxPrice)));
+        }
+    }
+
+    private static String filterColumn(String column, String sortColumn) {
+        return column.equals(sortColumn) ? column : "+" + column;
+    }
+
+    private static long parseLong(Uri uri, String parameter) {
+        try {
+            return Long.parseLong(parameter);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Filter must be an integer for " + uri);
+        }
+    }
+
+    /**
+     * Search the product and supplier names of all books through the full-text index, see
+     * {@link BookEntry#SEARCH_URI}. Each lookup only touches the index entries of the matching
+     * words instead of scanning all names.
+     */
+    private Cursor querySearch(SQLiteDatabase database, Uri uri, String[] projection,
+                               String selection, String[] selectionArgs) {
+        int limit = parseLimit(uri, DEFAULT_SEARCH_LIMIT);
+        String table = booksTableFor(projection, selection, null);
+        String searchText = uri.getQueryParameter(BookEntry.QUERY_PARAMETER_SEARCH);
+        String matchQuery = buildMatchQuery(searchText, null);
+
+        if (matchQuery == null) {
+            // Nothing to search for, so return an empty result
+            checkProjection(table, projection);
+            return new MatrixCursor(projection, 0);
+        }
+
+        // Books whose name starts with the search text come first, followed by all other books
+        // matching in the product name and finally those only matching in the supplier name
+        String namePrefix = searchText.trim()
+                .replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        selection = DatabaseUtils.concatenateWhere(selection, SELECTION_SEARCH);
+        selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs, new String[]{
+                matchQuery,
+                namePrefix,
+                buildMatchQuery(searchText, BookEntry.COLUMN_PRODUCT_NAME)});
+
+        return runQuery(database, table, projection, selection, selectionArgs,
+                SORT_ORDER_SEARCH, limitClause(uri, limit));
+    }
+
+    /**
+     * Turn the text typed by the user into a full-text query that matches every word as a prefix,
+     * optionally restricted to a single column
+     *
+     * @return the query or null if the text does not contain any words
+     */
+    private static String buildMatchQuery(String text, String column) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder query = new StringBuilder();
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            if (column != null) {
+                query.append(column).append(':');
+            }
+            query.append(word).append('*');
+        }
+        return query.length() == 0 ? null : query.toString();
+    }
+
+    /**
+     * Read the {@link BookEntry#QUERY_PARAMETER_LIMIT} of the given URI
+     *
+     * @param defaultLimit limit to use if the URI does not have one, or 0 if it is required
+     */
+    private static int parseLimit(Uri uri, int defaultLimit) {
+        String limitParameter = uri.getQueryParameter(BookEntry.QUERY_PARAMETER_LIMIT);
+        if (limitParameter == null && defaultLimit > 0) {
+            return defaultLimit;
+        }
+
+        int limit;
+        try {
+            limit = Integer.parseInt(limitParameter);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Page size must be an integer for " + uri);
+        }
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return limit;
+    }
+
+    /**
+     * Read the optional {@link BookEntry#QUERY_PARAMETER_LIMIT} and
+     * {@link BookEntry#QUERY_PARAMETER_OFFSET} of a list URI
+     *
+     * @return the LIMIT clause or null if the URI has no limit
+     */
+    private static String parseWindow(Uri uri) {
+        if (uri.getQueryParameter(BookEntry.QUERY_PARAMETER_LIMIT) == null) {
+            if (uri.getQueryParameter(BookEntry.QUERY_PARAMETER_OFFSET) != null) {
+                throw new IllegalArgumentException("Offset requires a limit for " + uri);
+            }
+            return null;
+        }
+        return limitClause(uri, parseLimit(uri, 0));
+    }
+
+    /**
+     * @return the LIMIT clause for the given limit and the {@link BookEntry#QUERY_PARAMETER_OFFSET}
+     * of the given URI, if it has one
+     */
+    private static String limitClause(Uri uri, int limit) {
+        String offsetParameter = uri.getQueryParameter(BookEntry.QUERY_PARAMETER_OFFSET);
+        if (offsetParameter == null) {
+            return String.valueOf(limit);
+        }
+
+        int offset;
+        try {
+            offset = Integer.parseInt(offsetParameter);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Offset must be an integer for " + uri);
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset cannot be negative for " + uri);
+        }
+        // SQLite reads LIMIT a, b as OFFSET a LIMIT b
+        return offset + ", " + limit;
+    }
+
+    /**
+     * Check that the projection only contains columns of the given table or view. The projection
+     * map of SQLiteQueryBuilder lets any column with an alias through before Android 10, so this
+     * is checked separately.
+     */
+    private static void checkProjection(String table, String[] projection) {
+        Map<String, String> columns = PROJECTION_MAPS.get(table);
+        for (String column : projection) {
+            if (!columns.containsKey(column)) {
+                throw new IllegalArgumentException("Unknown column " + column + " of " + table);
+            }
+        }
+    }
+
+    /**
+     * Run a query of the provider through a strict SQLiteQueryBuilder and pass it to the slow
+     * query log. The strict builder rejects selections that would change the statement beyond
+     * its WHERE clause. The first window of the cursor is filled right away, so the duration
+     * includes reading the first rows.
+     */
+    private Cursor runQuery(SQLiteDatabase database, String table, String[] projection, String selection,
+                            String[] selectionArgs, String sortOrder, String limit) {
+        checkProjection(table, projection);
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(table);
+        builder.setProjectionMap(PROJECTION_MAPS.get(table));
+        builder.setStrict(true);
+
+        long start = System.nanoTime();
+        Cursor cursor = builder.query(database, projection, selection, selectionArgs,
+                null, null, sortOrder, limit);
+        try {
+            cursor.getCount();
+            long durationNanos = System.nanoTime() - start;
+            if (mSlowQueryLog.isChecked(durationNanos)) {
+                mSlowQueryLog.check(database, builder.buildQuery(projection, selection, null, null,
+                        sortOrder, limit), selectionArgs, durationNanos);
+            }
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+        return cursor;
+    }
+
+    /**
+     * Get the compiled statement for the given SQL, compiling it on first use.
+     * Must be called inside a transaction, see {@link #mStatementCache}.
+     */
+    private SQLiteStatement getStatement(SQLiteDatabase database, String sql) {
+        synchronized (mStatementCache) {
+            SQLiteStatement statement = mStatementCache.get(sql);
+            if (statement == null) {
+                statement = database.compileStatement(sql);
+                mStatementCache.put(sql, statement);
+            }
+            return statement;
+        }
+    }
+
+    /**
+     * Insert a book with all of its columns through the cached insert statement. Must be called
+     * inside a transaction.
+     *
+     * @return the ID of the new row or -1 if it could not be inserted
+     */
+    private long insertAllColumns(SQLiteDatabase database, String productName, long price,
+                                  long quantity, long supplierId) {
+        SQLiteStatement statement = getStatement(database, SQL_INSERT_BOOK);
+        synchronized (statement) {
+            statement.bindString(1, productName);
+            statement.bindLong(2, price);
+            statement.bindLong(3, quantity);
+            statement.bindLong(4, supplierId);
+            try {
+                return statement.executeInsert();
+            } catch (SQLException e) {
+                // Report the error like SQLiteDatabase.insert does. The failed statement did
+                // not change anything, so a surrounding batch can still be committed.
+                Log.e(LOG_TAG, "Error inserting book " + productName, e);
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Set the quantity of a single book through the cached update statement
+     */
+    private int updateQuantity(SQLiteDatabase database, long id, long quantity) {
+        database.beginTransaction();
+        try {
+            int rowsUpdated;
+            SQLiteStatement statement = getStatement(database, SQL_UPDATE_QUANTITY);
+            synchronized (statement) {
+                statement.bindLong(1, quantity);
+                statement.bindLong(2, id);
+                rowsUpdated = statement.executeUpdateDelete();
+            }
+            database.setTransactionSuccessful();
+            return rowsUpdated;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Set the price of a single book through the cached update statement
+     */
+    private int updatePrice(SQLiteDatabase database, long id, long price) {
+        database.beginTransaction();
+        try {
+            int rowsUpdated;
+            SQLiteStatement statement = getStatement(database, SQL_UPDATE_PRICE);
+            synchronized (statement) {
+                statement.bindLong(1, price);
+                statement.bindLong(2, id);
+                rowsUpdated = statement.executeUpdateDelete();
+            }
+            database.setTransactionSuccessful();
+            return rowsUpdated;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Check that the price in the given values is a non-negative integer number of cents.
+     * Fractional values are rejected instead of being rounded, as they are most likely amounts
+     * in the whole currency unit from a caller that does not know about cents.
+     */
+    private static void checkPrice(ContentValues values) {
+        Object price = values.get(BookEntry.COLUMN_PRICE);
+        if (price == null) {
+            throw new IllegalArgumentException("Price cannot be set as null and must be an integer");
+        } else if (price instanceof Float || price instanceof Double) {
+            throw new IllegalArgumentException("Price must be given in cents as an integer");
+        }
+        Long cents = values.getAsLong(BookEntry.COLUMN_PRICE);
+        if (cents == null || cents < 0) {
+            throw new IllegalArgumentException("Product requires a valid price");
+        }
+    }
+
+    /**
+     * Parse the book ID passed as the argument of a provider method
+     */
+    private static long parseBookId(String arg) {
+        try {
+            return Long.parseLong(arg);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Book ID must be an integer: " + arg);
+        }
+    }
+
+    /**
+     * Check the ISBN in the given values, which can be null to write a book without ISBN
+     *
+     * @return the values with the ISBN as 13 digits, see {@link Isbn}
+     */
+    private static ContentValues normalizeIsbn(ContentValues values) {
+        String isbn = values.getAsString(BookEntry.COLUMN_ISBN);
+        if (isbn == null) {
+            return values;
+        }
+        ContentValues normalized = new ContentValues(values);
+        normalized.put(BookEntry.COLUMN_ISBN, Isbn.normalize(isbn));
+        return normalized;
+    }
+
+    /**
+     * Check that the given ISBN can be set on the books of the given selection, i.e. that no other
+     * book has it and that the selection does not match several books. The ISBN is looked up
+     * with its unique index.
+     *
+     * @throws IllegalArgumentException if the ISBN would belong to more than one book
+     */
+    private static void checkIsbnAvailable(SQLiteDatabase database, String isbn,
+                                           String selection, String[] selectionArgs, Uri uri) {
+        String[] isbnArgs = {isbn};
+        if (DatabaseUtils.queryNumEntries(database, BookEntry.TABLE_NAME,
+                BookEntry.COLUMN_ISBN + "=?", isbnArgs) > 0
+                && DatabaseUtils.queryNumEntries(database, BookEntry.TABLE_NAME,
+                DatabaseUtils.concatenateWhere(selection, BookEntry.COLUMN_ISBN + "=?"),
+                DatabaseUtils.appendSelectionArgs(selectionArgs, isbnArgs)) == 0) {
+            throw new IllegalArgumentException("ISBN already belongs to another book for " + uri);
+        }
+        if (DatabaseUtils.queryNumEntries(database, BookEntry.TABLE_NAME, selection, selectionArgs) > 1) {
+            throw new IllegalArgumentException("ISBN cannot be set on several books for " + uri);
+        }
+    }
+
+    /**
+     * A selection and its arguments that conditions are added to with AND
+     */
+    private static class Selection {
+
+        String mSelection;
+        String[] mSelectionArgs;
+
+        Selection(String selection, String[] selectionArgs) {
+            mSelection = selection;
+            mSelectionArgs = selectionArgs;
+        }
+
+        void add(String condition, String... args) {
+            mSelection = DatabaseUtils.concatenateWhere(mSelection, condition);
+            mSelectionArgs = DatabaseUtils.appendSelectionArgs(mSelectionArgs, args);
+        }
+    }
 }
@@ -0,0 +1,103 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.text.TextUtils;
+import android.util.LruCache;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+import java.util.List;
+
+/**
+ * Read-through cache of the most recently read books, shared by all screens of the app.
+ * {@link BookProvider} removes books from the cache as soon as a write to them is committed,
+ * so the cache never returns a book that is older than the database.
+ */
+public final class BookRepository {
+
+    /**
+     * Maximum number of books kept in the cache
+     */
+    private static final int CACHE_SIZE = 100;
+
+    private static final LruCache<Long, Book> sCache = new LruCache<>(CACHE_SIZE);
+
+    /**
+     * Incremented on each invalidation, so a book that was read from the database while it was
+     * being changed is not put into the cache. Guarded by sCache.
+     */
+    private static long sInvalidationCount = 0;
+
+    private BookRepository() {
+    }
+
+    /**
+     * @return the cached book with the given ID or null if it is not cached
+     */
+    @Nullable
+    public static Book getCachedBook(long id) {
+        return sCache.get(id);
+    }
+
+    /**
+     * Get the book with the given ID from the cache or, if it is not cached, from the provider
+     *
+     * @return the book or null if it does not exist
+     */
+    @Nullable
+    @WorkerThread
+    public static Book getBook(ContentResolver contentResolver, long id) {
+        Book book = sCache.get(id);
+        if (book != null) {
+            return book;
+        }
+
+        long invalidationCount;
+        synchronized (sCache) {
+            invalidationCount = sInvalidationCount;
+        }
+
+        Cursor cursor = contentResolver.query(ContentUris.withAppendedId(BookEntry.CONTENT_URI, id),
+                Book.PROJECTION, null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            book = Book.fromCursor(cursor);
+        } finally {
+            cursor.close();
+        }
+
+        synchronized (sCache) {
+            if (invalidationCount == sInvalidationCount) {
+                sCache.put(id, book);
+            }
+        }
+        return book;
+    }
+
+    /**
+     * Remove the books changed by a write to the given URI from the cache. A URI of a single book
+     * only removes that book, any other URI clears the cache.
+     */
+    static void invalidate(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        synchronized (sCache) {
+            sInvalidationCount++;
+            if (segments.size() == 2 && BookContract.PATH_BOOKS.equals(segments.get(0))
+                    && TextUtils.isDigitsOnly(segments.get(1))) {
+                sCache.remove(Long.parseLong(segments.get(1)));
+            } else {
+                sCache.evictAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.Cursor;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+/**
+ * Immutable snapshot of the columns of a book that are shown in the catalog list.
+ */
+public final class BookSummary {
+
+    /**
+     * Columns that have to be queried to create a BookSummary from a cursor
+     */
+    public static final String[] PROJECTION = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRICE,
+            BookEntry.COLUMN_QUANTITY,
+            BookEntry.COLUMN_LAST_MODIFIED};
+
+    private static final int INDEX_ID = 0;
+    private static final int INDEX_PRODUCT_NAME = 1;
+    private static final int INDEX_PRICE = 2;
+    private static final int INDEX_QUANTITY = 3;
+    private static final int INDEX_LAST_MODIFIED = 4;
+
+    private final long mId;
+    private final String mProductName;
+    private final long mPrice;
+    private final int mQuantity;
+    private final long mLastModified;
+
+    public BookSummary(long id, String productName, long price, int quantity, long lastModified) {
+        mId = id;
+        mProductName = productName;
+        mPrice = price;
+        mQuantity = quantity;
+        mLastModified = lastModified;
+    }
+
+    /**
+     * Create a BookSummary from the current row of a cursor that was queried with {@link #PROJECTION}
+     */
+    public static BookSummary fromCursor(Cursor cursor) {
+        return new BookSummary(
+                cursor.getLong(INDEX_ID),
+                cursor.getString(INDEX_PRODUCT_NAME),
+                cursor.getLong(INDEX_PRICE),
+                cursor.getInt(INDEX_QUANTITY),
+                cursor.getLong(INDEX_LAST_MODIFIED));
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public String getProductName() {
+        return mProductName;
+    }
+
+    /**
+     * @return the price in cents, see {@link Money}
+     */
+    public long getPrice() {
+        return mPrice;
+    }
+
+    public int getQuantity() {
+        return mQuantity;
+    }
+
+    /**
+     * @return the time of the last change in milliseconds since the epoch
+     */
+    public long getLastModified() {
+        return mLastModified;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs all writes to the {@link BookProvider} on a single background thread, in the order they
+ * were submitted, and reports their results back on the main thread.
+ * <p>
+ * The ContentValues and Bundles passed to a write must not be changed after submitting it.
+ */
+public final class BookWriteExecutor {
+
+    private static final String LOG_TAG = BookWriteExecutor.class.getSimpleName();
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Receives the result of a write on the main thread
+     */
+    public interface Callback<T> {
+        /**
+         * @param result the result of the write or null if it failed with an exception
+         */
+        @MainThread
+        void onComplete(@Nullable T result);
+    }
+
+    private BookWriteExecutor() {
+    }
+
+    /**
+     * Run the given write after all previously submitted writes
+     *
+     * @param callback notified on the main thread when the write finished, may be null
+     * @return a Future for the result of the write
+     */
+    public static <T> Future<T> submit(final Callable<T> write, @Nullable final Callback<T> callback) {
+        return sExecutor.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                T result = null;
+                try {
+                    result = write.call();
+                    return result;
+                } catch (Exception e) {
+                    Log.e(LOG_TAG, "Write failed", e);
+                    throw e;
+                } finally {
+                    deliver(callback, result);
+                }
+            }
+        });
+    }
+
+    private static <T> void deliver(@Nullable final Callback<T> callback, final T result) {
+        if (callback == null) {
+            return;
+        }
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onComplete(result);
+            }
+        });
+    }
+
+    /**
+     * Insert a book, the callback receives its URI
+     */
+    public static Future<Uri> insert(final ContentResolver contentResolver, final Uri uri,
+                                     final ContentValues values, @Nullable Callback<Uri> callback) {
+        return submit(new Callable<Uri>() {
+            @Override
+            public Uri call() {
+                return contentResolver.insert(uri, values);
+            }
+        }, callback);
+    }
+
+    /**
+     * Insert several books in one transaction, the callback receives the number of inserted books
+     */
+    public static Future<Integer> bulkInsert(final ContentResolver contentResolver, final Uri uri,
+                                             final ContentValues[] values,
+                                             @Nullable Callback<Integer> callback) {
+        return submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return contentResolver.bulkInsert(uri, values);
+            }
+        }, callback);
+    }
+
+    /**
+     * Update books, the callback receives the number of updated books
+     */
+    public static Future<Integer> update(final ContentResolver contentResolver, final Uri uri,
+                                         final ContentValues values, final String selection,
+                                         final String[] selectionArgs,
+                                         @Nullable Callback<Integer> callback) {
+        return submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return contentResolver.update(uri, values, selection, selectionArgs);
+            }
+        }, callback);
+    }
+
+    /**
+     * Delete books, the callback receives the number of deleted books
+     */
+    public static Future<Integer> delete(final ContentResolver contentResolver, final Uri uri,
+                                         final String selection, final String[] selectionArgs,
+                                         @Nullable Callback<Integer> callback) {
+        return submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return contentResolver.delete(uri, selection, selectionArgs);
+            }
+        }, callback);
+    }
+
+    /**
+     * Change the quantity of a book with {@link BookEntry#METHOD_ADJUST_QUANTITY}, the callback
+     * receives the new quantity or null if the quantity could not be changed
+     */
+    public static Future<Integer> adjustQuantity(final ContentResolver contentResolver,
+                                                 final long id, final int delta,
+                                                 @Nullable Callback<Integer> callback) {
+        return submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                Bundle extras = new Bundle();
+                extras.putInt(BookEntry.EXTRA_QUANTITY_DELTA, delta);
+                Bundle result = contentResolver.call(BookEntry.CONTENT_URI,
+                        BookEntry.METHOD_ADJUST_QUANTITY, String.valueOf(id), extras);
+                return result == null ? null : result.getInt(BookEntry.EXTRA_QUANTITY);
+            }
+        }, callback);
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces the change notifications of {@link BookProvider}. Notifications requested within
+ * a time window, or within a batch transaction, are collected and delivered once per URI at the
+ * end of the window or once the batch has been committed. This way a burst of writes causes one
+ * reload of each observer instead of one per write.
+ * <p>
+ * Cached books of the {@link BookRepository} are invalidated as soon as a change is committed,
+ * without waiting for the window, so a reader never gets a cached book older than the database.
+ */
+class ChangeNotifier {
+
+    /**
+     * If more URIs than this are pending at once, only their parent URIs are notified instead
+     */
+    private static final int MAX_PENDING_URIS = 32;
+
+    private final ContentResolver mContentResolver;
+    private final long mWindowMillis;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * URIs waiting for the end of the current window, guarded by this
+     */
+    private final Set<Uri> mPending = new LinkedHashSet<>();
+    private boolean mFlushScheduled = false;
+
+    /**
+     * The batch the current thread is running, if any
+     */
+    private final ThreadLocal<Batch> mBatch = new ThreadLocal<>();
+
+    /**
+     * URIs changed within a batch. Batches can be nested, the URIs are only notified once the
+     * outermost batch has ended and all of its nested batches were committed.
+     */
+    private static class Batch {
+        final Set<Uri> mUris = new LinkedHashSet<>();
+        int mDepth = 0;
+        boolean mCommitted = true;
+    }
+
+    private final AtomicLong mRequested = new AtomicLong();
+    private final AtomicLong mDelivered = new AtomicLong();
+
+    /**
+     * @param windowMillis time to collect notifications before delivering them, or 0 to deliver
+     *                     them right away (except within a batch)
+     */
+    ChangeNotifier(ContentResolver contentResolver, long windowMillis) {
+        mContentResolver = contentResolver;
+        mWindowMillis = windowMillis;
+    }
+
+    /**
+     * Request a notification for the given URI. Outside of a batch, the change must already be
+     * committed.
+     */
+    void notifyChange(Uri uri) {
+        mRequested.incrementAndGet();
+
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.mUris.add(uri);
+            return;
+        }
+
+        BookRepository.invalidate(uri);
+        synchronized (this) {
+            mPending.add(uri);
+        }
+        schedule();
+    }
+
+    /**
+     * Hold back all notifications of the current thread until {@link #endBatch(boolean)}
+     */
+    void beginBatch() {
+        Batch batch = mBatch.get();
+        if (batch == null) {
+            batch = new Batch();
+            mBatch.set(batch);
+        }
+        batch.mDepth++;
+    }
+
+    /**
+     * End the batch of the current thread
+     *
+     * @param committed true if the changes of the batch were committed and have to be notified,
+     *                  false if they were rolled back
+     */
+    void endBatch(boolean committed) {
+        Batch batch = mBatch.get();
+        if (batch == null) {
+            return;
+        }
+        batch.mCommitted &= committed;
+        if (--batch.mDepth > 0) {
+            return;
+        }
+        mBatch.remove();
+        if (!batch.mCommitted || batch.mUris.isEmpty()) {
+            return;
+        }
+
+        for (Uri uri : batch.mUris) {
+            BookRepository.invalidate(uri);
+        }
+        synchronized (this) {
+            mPending.addAll(batch.mUris);
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (mWindowMillis <= 0) {
+            flush();
+            return;
+        }
+        synchronized (this) {
+            if (mFlushScheduled) {
+                return;
+            }
+            mFlushScheduled = true;
+        }
+        mHandler.postDelayed(mFlushRunnable, mWindowMillis);
+    }
+
+    /**
+     * Deliver all pending notifications
+     */
+    void flush() {
+        List<Uri> uris;
+        synchronized (this) {
+            mFlushScheduled = false;
+            uris = collapse(mPending);
+            mPending.clear();
+        }
+
+        for (Uri uri : uris) {
+            mContentResolver.notifyChange(uri, null);
+        }
+        mDelivered.addAndGet(uris.size());
+    }
+
+    /**
+     * Remove all URIs whose ancestor is notified as well, as observers of a URI are also notified
+     * of changes to its ancestors. Too many URIs are replaced by their parents.
+     */
+    private static List<Uri> collapse(Set<Uri> pending) {
+        Set<Uri> uris = pending;
+        if (uris.size() > MAX_PENDING_URIS) {
+            uris = new LinkedHashSet<>();
+            for (Uri uri : pending) {
+                List<String> segments = uri.getPathSegments();
+                uris.add(segments.isEmpty() ? uri : new Uri.Builder()
+                        .scheme(uri.getScheme())
+                        .authority(uri.getAuthority())
+                        .appendPath(segments.get(0))
+                        .build());
+            }
+        }
+
+        List<Uri> collapsed = new ArrayList<>(uris.size());
+        for (Uri uri : uris) {
+            boolean hasAncestor = false;
+            for (Uri other : uris) {
+                if (other != uri && isAncestor(other, uri)) {
+                    hasAncestor = true;
+                    break;
+                }
+            }
+            if (!hasAncestor) {
+                collapsed.add(uri);
+            }
+        }
+        return collapsed;
+    }
+
+    private static boolean isAncestor(Uri ancestor, Uri uri) {
+        if (!ancestor.getAuthority().equals(uri.getAuthority())) {
+            return false;
+        }
+        List<String> ancestorSegments = ancestor.getPathSegments();
+        List<String> segments = uri.getPathSegments();
+        return ancestorSegments.size() < segments.size()
+                && segments.subList(0, ancestorSegments.size()).equals(ancestorSegments);
+    }
+
+    /**
+     * @return the number of notifications requested by the provider
+     */
+    long getRequestedCount() {
+        return mRequested.get();
+    }
+
+    /**
+     * @return the number of notifications actually sent to the observers
+     */
+    long getDeliveredCount() {
+        return mDelivered.get();
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.android.inventoryapp.data;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Minimal reader and writer for comma separated values as described in RFC 4180. Fields
+ * containing a comma, a quote or a line break are quoted, quotes within them are doubled.
+ */
+final class Csv {
+
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+
+    /**
+     * Maximum length of a single record, so a missing closing quote cannot make the reader
+     * buffer the rest of the file
+     */
+    static final int MAX_RECORD_LENGTH = 64 * 1024;
+
+    private Csv() {
+    }
+
+    /**
+     * Reads one record at a time from a BufferedReader. Only the current record is kept in
+     * memory.
+     */
+    static class Reader {
+
+        private final BufferedReader mReader;
+        private final StringBuilder mField = new StringBuilder();
+        private int mLineNumber = 0;
+        private int mRecordLineNumber = 0;
+
+        Reader(BufferedReader reader) {
+            mReader = reader;
+        }
+
+        /**
+         * Read the next record into the given list, replacing its content
+         *
+         * @return false if the end of the input was reached
+         * @throws IOException if the input cannot be read or a record is too long
+         */
+        boolean readRecord(List<String> fields) throws IOException {
+            fields.clear();
+            String line = mReader.readLine();
+            if (line == null) {
+                return false;
+            }
+            mLineNumber++;
+            mRecordLineNumber = mLineNumber;
+
+            int recordLength = 0;
+            boolean quoted = false;
+            mField.setLength(0);
+            while (true) {
+                recordLength += line.length();
+                if (recordLength > MAX_RECORD_LENGTH) {
+                    throw new IOException("Record on line " + mRecordLineNumber + " is too long");
+                }
+                for (int i = 0; i < line.length(); i++) {
+                    char c = line.charAt(i);
+                    if (quoted) {
+                        if (c != QUOTE) {
+                            mField.append(c);
+                        } else if (i + 1 < line.length() && line.charAt(i + 1) == QUOTE) {
+                            mField.append(QUOTE);
+                            i++;
+                        } else {
+                            quoted = false;
+                        }
+                    } else if (c == QUOTE) {
+                        quoted = true;
+                    } else if (c == SEPARATOR) {
+                        fields.add(mField.toString());
+                        mField.setLength(0);
+                    } else {
+                        mField.append(c);
+                    }
+                }
+                if (!quoted) {
+                    break;
+                }
+
+                //A quoted field continues on the next line
+                line = mReader.readLine();
+                if (line == null) {
+                    throw new IOException("Unterminated quote in record on line " + mRecordLineNumber);
+                }
+                mLineNumber++;
+                mField.append('\n');
+            }
+            fields.add(mField.toString());
+            return true;
+        }
+
+        /**
+         * @return the number of the line the last read record started on, counting from 1
+         */
+        int getRecordLineNumber() {
+            return mRecordLineNumber;
+        }
+    }
+
+    /**
+     * Write a record followed by a line break
+     */
+    static void writeRecord(Writer writer, String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(SEPARATOR);
+            }
+            writeField(writer, fields[i]);
+        }
+        writer.write("\r\n");
+    }
+
+    private static void writeField(Writer writer, String field) throws IOException {
+        if (field == null) {
+            return;
+        }
+        boolean needsQuotes = false;
+        for (int i = 0; i < field.length() && !needsQuotes; i++) {
+            char c = field.charAt(i);
+            needsQuotes = c == SEPARATOR || c == QUOTE || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            writer.write(field);
+            return;
+        }
+        writer.write(QUOTE);
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == QUOTE) {
+                writer.write(QUOTE);
+            }
+            writer.write(c);
+        }
+        writer.write(QUOTE);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.android.inventoryapp.data;
+
+/**
+ * Conversions for ISBNs, which are stored as the 13 digits of their barcode in
+ * {@link BookContract.BookEntry#COLUMN_ISBN}. An ISBN-10 is converted to its ISBN-13, so a book
+ * is found by either form and by scanning its barcode.
+ */
+public final class Isbn {
+
+    /**
+     * Prefix of the ISBN-13 of every ISBN-10
+     */
+    private static final String ISBN_10_PREFIX = "978";
+
+    private Isbn() {
+    }
+
+    /**
+     * Convert an ISBN-10 or ISBN-13 such as "0-306-40615-2" or "978-0-306-40615-7" into its
+     * 13 digits. Hyphens and spaces are ignored.
+     *
+     * @throws IllegalArgumentException if the text is not an ISBN or its check digit is wrong
+     */
+    public static String normalize(String text) {
+        String isbn = text.replace("-", "").replace(" ", "");
+        if (isbn.length() == 10) {
+            if (!isDigits(isbn, 9) || checkDigit10(isbn) != Character.toUpperCase(isbn.charAt(9))) {
+                throw new IllegalArgumentException("Not a valid ISBN: " + text);
+            }
+            isbn = ISBN_10_PREFIX + isbn.substring(0, 9);
+            return isbn + checkDigit13(isbn);
+        }
+        if (isbn.length() != 13 || !isDigits(isbn, 13)
+                || !(isbn.startsWith(ISBN_10_PREFIX) || isbn.startsWith("979"))
+                || checkDigit13(isbn) != isbn.charAt(12)) {
+            throw new IllegalArgumentException("Not a valid ISBN: " + text);
+        }
+        return isbn;
+    }
+
+    private static boolean isDigits(String text, int count) {
+        for (int i = 0; i < count; i++) {
+            if (text.charAt(i) < '0' || text.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the check digit of the first 9 digits of an ISBN-10, which is X for 10
+     */
+    private static char checkDigit10(String isbn) {
+        int sum = 0;
+        for (int i = 0; i < 9; i++) {
+            sum += (10 - i) * (isbn.charAt(i) - '0');
+        }
+        int check = (11 - sum % 11) % 11;
+        return check == 10 ? 'X' : (char) ('0' + check);
+    }
+
+    /**
+     * @return the check digit of the first 12 digits of an ISBN-13, as for any EAN-13 barcode
+     */
+    private static char checkDigit13(String isbn) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (i % 2 == 0 ? 1 : 3) * (isbn.charAt(i) - '0');
+        }
+        return (char) ('0' + (10 - sum % 10) % 10);
+    }
+}
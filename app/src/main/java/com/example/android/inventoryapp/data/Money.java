@@ -0,0 +1,53 @@
+package com.example.android.inventoryapp.data;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+
+/**
+ * Conversions for prices, which are stored as an integer number of cents (minor units of the
+ * currency) in {@link BookContract.BookEntry#COLUMN_PRICE}. Sums of prices can therefore be
+ * computed exactly with integer arithmetic, both in Java and with SUM() in SQLite.
+ */
+public final class Money {
+
+    /**
+     * Number of decimal places of a price, i.e. a price of 1 is 0.01 of the currency
+     */
+    public static final int SCALE = 2;
+
+    private Money() {
+    }
+
+    /**
+     * Parse a decimal amount such as "12.99" or "12,99" into cents
+     *
+     * @throws NumberFormatException if the text is not a valid, non-negative amount with at most
+     *                               {@link #SCALE} decimal places
+     */
+    public static long parse(String text) {
+        BigDecimal amount = new BigDecimal(text.trim().replace(',', '.'));
+        if (amount.signum() < 0 || amount.scale() > SCALE) {
+            throw new NumberFormatException("Not a valid amount: " + text);
+        }
+        try {
+            return amount.movePointRight(SCALE).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount too large: " + text);
+        }
+    }
+
+    /**
+     * Format an amount in cents with the given (currency) format
+     */
+    public static String format(long cents, NumberFormat format) {
+        return format.format(BigDecimal.valueOf(cents, SCALE));
+    }
+
+    /**
+     * Format an amount in cents as a plain decimal number such as "12.99", which can be read
+     * again with {@link #parse(String)}
+     */
+    public static String toPlainString(long cents) {
+        return BigDecimal.valueOf(cents, SCALE).toPlainString();
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.android.inventoryapp.data;
+
+import android.os.Bundle;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the operations of {@link BookProvider}, per operation and
+ * URI matcher code. Recording only updates atomic counters, so it never blocks and can be called
+ * on every operation. Histograms have power-of-two buckets, so a percentile is only known up to
+ * a factor of two, which is enough to tell a slow query from a fast one.
+ * <p>
+ * A snapshot is not taken atomically, so its figures can be a few operations apart from each
+ * other while the provider is in use.
+ */
+final class ProviderMetrics {
+
+    /**
+     * Operations of the provider. Quantity adjustments through {@link BookEntry#METHOD_ADJUST_QUANTITY}
+     * are recorded as updates.
+     */
+    static final int QUERY = 0;
+    static final int INSERT = 1;
+    static final int BULK_INSERT = 2;
+    static final int UPDATE = 3;
+    static final int DELETE = 4;
+
+    private static final String[] OPERATION_NAMES = {"query", "insert", "bulkInsert", "update", "delete"};
+
+    /**
+     * Bucket i counts the values from 2^(i-1) to 2^i - 1, bucket 0 counts the zeros and the last
+     * bucket everything that is larger. For latencies in microseconds, the last bucket starts at
+     * about 18 minutes.
+     */
+    static final int BUCKET_COUNT = 32;
+
+    private static final String UNKNOWN_MATCH_NAME = "UNKNOWN";
+
+    private final int[] mMatchCodes;
+    private final String[] mMatchNames;
+    /**
+     * Statistics of each operation and match code, indexed by operation and then by the index of
+     * the match code. The last index of each operation is for URIs that did not match.
+     */
+    private final Stats[][] mStats;
+
+    /**
+     * Statistics of a single operation on a single URI matcher code
+     */
+    private static class Stats {
+        final AtomicLong mCalls = new AtomicLong();
+        final AtomicLong mErrors = new AtomicLong();
+        final AtomicLong mRows = new AtomicLong();
+        final AtomicLong mTotalNanos = new AtomicLong();
+        final AtomicLong mMaxNanos = new AtomicLong();
+        final AtomicLongArray mLatencyMicros = new AtomicLongArray(BUCKET_COUNT);
+        final AtomicLongArray mRowsPerCall = new AtomicLongArray(BUCKET_COUNT);
+    }
+
+    /**
+     * @param matchCodes the URI matcher codes of the provider
+     * @param matchNames the names of the codes in the snapshot, in the same order
+     */
+    ProviderMetrics(int[] matchCodes, String[] matchNames) {
+        if (matchCodes.length != matchNames.length) {
+            throw new IllegalArgumentException("Every match code requires a name");
+        }
+        mMatchCodes = matchCodes.clone();
+        mMatchNames = matchNames.clone();
+        mStats = new Stats[OPERATION_NAMES.length][matchCodes.length + 1];
+        for (Stats[] operationStats : mStats) {
+            for (int i = 0; i < operationStats.length; i++) {
+                operationStats[i] = new Stats();
+            }
+        }
+    }
+
+    /**
+     * Record a successful call
+     *
+     * @param startNanos the {@link System#nanoTime()} when the call started
+     * @param rows       number of rows the call read or wrote
+     */
+    void record(int operation, int match, long startNanos, long rows) {
+        Stats stats = getStats(operation, match);
+        recordLatency(stats, System.nanoTime() - startNanos);
+        stats.mRows.addAndGet(rows);
+        stats.mRowsPerCall.incrementAndGet(bucket(rows));
+    }
+
+    /**
+     * Record a call that failed with an exception
+     *
+     * @param startNanos the {@link System#nanoTime()} when the call started
+     */
+    void recordError(int operation, int match, long startNanos) {
+        Stats stats = getStats(operation, match);
+        recordLatency(stats, System.nanoTime() - startNanos);
+        stats.mErrors.incrementAndGet();
+    }
+
+    /**
+     * @return the number of calls, including the failed ones
+     */
+    long getCalls(int operation, int match) {
+        return getStats(operation, match).mCalls.get();
+    }
+
+    long getErrors(int operation, int match) {
+        return getStats(operation, match).mErrors.get();
+    }
+
+    long getRows(int operation, int match) {
+        return getStats(operation, match).mRows.get();
+    }
+
+    /**
+     * @param percentile percentage of the calls, from 0 to 100
+     * @return the upper bound of the latency of the given percentage of the calls in
+     * microseconds, or 0 if there were no calls
+     */
+    long getLatencyMicros(int operation, int match, double percentile) {
+        Stats stats = getStats(operation, match);
+        return percentile(stats.mLatencyMicros, percentile, stats.mMaxNanos.get() / 1000);
+    }
+
+    /**
+     * Put the statistics of every operation and URI that was used into a Bundle, see
+     * {@link BookEntry#METHOD_GET_METRICS}
+     */
+    void writeTo(Bundle bundle) {
+        for (int operation = 0; operation < mStats.length; operation++) {
+            for (int index = 0; index < mStats[operation].length; index++) {
+                Stats stats = mStats[operation][index];
+                if (stats.mCalls.get() == 0) {
+                    continue;
+                }
+                String matchName = index < mMatchNames.length ? mMatchNames[index] : UNKNOWN_MATCH_NAME;
+                bundle.putBundle(OPERATION_NAMES[operation] + ":" + matchName, toBundle(stats));
+            }
+        }
+    }
+
+    private static Bundle toBundle(Stats stats) {
+        long maxMicros = stats.mMaxNanos.get() / 1000;
+        Bundle bundle = new Bundle();
+        bundle.putLong(BookEntry.EXTRA_METRIC_CALLS, stats.mCalls.get());
+        bundle.putLong(BookEntry.EXTRA_METRIC_ERRORS, stats.mErrors.get());
+        bundle.putLong(BookEntry.EXTRA_METRIC_ROWS, stats.mRows.get());
+        bundle.putLong(BookEntry.EXTRA_METRIC_TOTAL_MICROS, stats.mTotalNanos.get() / 1000);
+        bundle.putLong(BookEntry.EXTRA_METRIC_MAX_MICROS, maxMicros);
+        bundle.putLong(BookEntry.EXTRA_METRIC_P50_MICROS, percentile(stats.mLatencyMicros, 50, maxMicros));
+        bundle.putLong(BookEntry.EXTRA_METRIC_P99_MICROS, percentile(stats.mLatencyMicros, 99, maxMicros));
+        bundle.putLongArray(BookEntry.EXTRA_METRIC_LATENCY_HISTOGRAM, toArray(stats.mLatencyMicros));
+        bundle.putLongArray(BookEntry.EXTRA_METRIC_ROWS_HISTOGRAM, toArray(stats.mRowsPerCall));
+        return bundle;
+    }
+
+    private Stats getStats(int operation, int match) {
+        Stats[] operationStats = mStats[operation];
+        for (int i = 0; i < mMatchCodes.length; i++) {
+            if (mMatchCodes[i] == match) {
+                return operationStats[i];
+            }
+        }
+        return operationStats[mMatchCodes.length];
+    }
+
+    private static void recordLatency(Stats stats, long nanos) {
+        stats.mCalls.incrementAndGet();
+        stats.mTotalNanos.addAndGet(nanos);
+        stats.mLatencyMicros.incrementAndGet(bucket(nanos / 1000));
+        long max = stats.mMaxNanos.get();
+        while (nanos > max && !stats.mMaxNanos.compareAndSet(max, nanos)) {
+            max = stats.mMaxNanos.get();
+        }
+    }
+
+    /**
+     * @return the histogram bucket of the given non-negative value
+     */
+    static int bucket(long value) {
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, value)));
+    }
+
+    /**
+     * @return the upper bound of the bucket that contains the given percentile, but at most the
+     * largest recorded value
+     */
+    private static long percentile(AtomicLongArray buckets, double percentile, long max) {
+        long count = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            count += buckets.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return i == 0 ? 0 : Math.min(max, (1L << i) - 1);
+            }
+        }
+        return max;
+    }
+
+    private static long[] toArray(AtomicLongArray buckets) {
+        long[] array = new long[buckets.length()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = buckets.get(i);
+        }
+        return array;
+    }
+}
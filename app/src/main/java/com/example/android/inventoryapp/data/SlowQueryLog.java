@@ -0,0 +1,209 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the latest queries of {@link BookProvider} that took longer than a threshold, together
+ * with their query plan, in a ring buffer of a fixed size. Only slow queries are explained, so
+ * fast queries only pay for comparing their duration.
+ * <p>
+ * In the full scan check mode, which is meant for tests, every query is explained and a query
+ * that reads all rows of the books table without an index fails. Reading the books in the order
+ * of an index is allowed, as the pages of the catalog stop at their limit.
+ */
+final class SlowQueryLog {
+
+    private static final String LOG_TAG = SlowQueryLog.class.getSimpleName();
+
+    /**
+     * A scan of the books table without an index, in the query plans of old and new SQLite
+     * versions. The view that joins the books with their suppliers calls the books table "b".
+     */
+    private static final Pattern FULL_SCAN_OF_BOOKS = Pattern.compile(
+            "^SCAN (TABLE )?(" + BookEntry.TABLE_NAME + "|b)( AS \\w+)?$", Pattern.MULTILINE);
+
+    /**
+     * String and number literals, which are replaced by ? in the SQL shape of a query, so the
+     * same query with different inlined values is logged the same way
+     */
+    private static final Pattern LITERALS = Pattern.compile("'(?:[^']|'')*'|(?<![\\w.])\\d+(?:\\.\\d+)?");
+
+    /**
+     * A query that took longer than the threshold
+     */
+    static final class Entry {
+        /**
+         * Time the query ended, in milliseconds since the epoch
+         */
+        final long mTime;
+        /**
+         * The SQL of the query with all literals replaced by ?
+         */
+        final String mSqlShape;
+        final int mBindCount;
+        final long mDurationMicros;
+        /**
+         * The details of the query plan, one line per step
+         */
+        final String mPlan;
+
+        Entry(long time, String sqlShape, int bindCount, long durationMicros, String plan) {
+            mTime = time;
+            mSqlShape = sqlShape;
+            mBindCount = bindCount;
+            mDurationMicros = durationMicros;
+            mPlan = plan;
+        }
+    }
+
+    /**
+     * The ring buffer and the position of the next entry in it, guarded by this
+     */
+    private final Entry[] mEntries;
+    private int mNext = 0;
+    private int mSize = 0;
+
+    private volatile long mThresholdNanos;
+    private volatile boolean mCheckFullScans = false;
+
+    /**
+     * @param capacity        number of entries to keep
+     * @param thresholdMillis duration after which a query is logged
+     */
+    SlowQueryLog(int capacity, long thresholdMillis) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        mEntries = new Entry[capacity];
+        setThresholdMillis(thresholdMillis);
+    }
+
+    void setThresholdMillis(long thresholdMillis) {
+        if (thresholdMillis < 0) {
+            throw new IllegalArgumentException("Threshold cannot be negative");
+        }
+        mThresholdNanos = thresholdMillis * 1000000;
+    }
+
+    long getThresholdMillis() {
+        return mThresholdNanos / 1000000;
+    }
+
+    /**
+     * @param checkFullScans true to fail every query that scans all books without an index
+     */
+    void setCheckFullScans(boolean checkFullScans) {
+        mCheckFullScans = checkFullScans;
+    }
+
+    /**
+     * @return true if a query that took the given time has to be passed to {@link #check}, so
+     * the SQL of fast queries does not need to be built
+     */
+    boolean isChecked(long durationNanos) {
+        return durationNanos >= mThresholdNanos || mCheckFullScans;
+    }
+
+    /**
+     * Log the given query if it was slow, or fail it if it scans all books in the full scan
+     * check mode
+     *
+     * @param durationNanos time the query took, including reading its first rows
+     * @throws IllegalStateException if the query scans all books in the full scan check mode
+     */
+    void check(SQLiteDatabase database, String sql, String[] selectionArgs, long durationNanos) {
+        boolean slow = durationNanos >= mThresholdNanos;
+        boolean checkFullScan = mCheckFullScans;
+        if (!slow && !checkFullScan) {
+            return;
+        }
+
+        String plan = explain(database, sql, selectionArgs);
+        if (slow) {
+            Entry entry = new Entry(System.currentTimeMillis(), toShape(sql),
+                    selectionArgs == null ? 0 : selectionArgs.length, durationNanos / 1000, plan);
+            Log.w(LOG_TAG, "Slow query (" + entry.mDurationMicros + " us): " + entry.mSqlShape + "\n" + plan);
+            synchronized (this) {
+                mEntries[mNext] = entry;
+                mNext = (mNext + 1) % mEntries.length;
+                mSize = Math.min(mSize + 1, mEntries.length);
+            }
+        }
+        if (checkFullScan && FULL_SCAN_OF_BOOKS.matcher(plan).find()) {
+            throw new IllegalStateException("Query scans all books: " + sql + "\n" + plan);
+        }
+    }
+
+    /**
+     * @return the logged queries, oldest first
+     */
+    synchronized List<Entry> getEntries() {
+        List<Entry> entries = new ArrayList<>(mSize);
+        for (int i = 0; i < mSize; i++) {
+            entries.add(mEntries[(mNext - mSize + i + mEntries.length) % mEntries.length]);
+        }
+        return entries;
+    }
+
+    /**
+     * Put the logged queries into a Bundle, see {@link BookEntry#METHOD_GET_SLOW_QUERIES}
+     */
+    void writeTo(Bundle bundle) {
+        List<Entry> entries = getEntries();
+        long[] times = new long[entries.size()];
+        String[] sqlShapes = new String[entries.size()];
+        int[] bindCounts = new int[entries.size()];
+        long[] durations = new long[entries.size()];
+        String[] plans = new String[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            times[i] = entry.mTime;
+            sqlShapes[i] = entry.mSqlShape;
+            bindCounts[i] = entry.mBindCount;
+            durations[i] = entry.mDurationMicros;
+            plans[i] = entry.mPlan;
+        }
+        bundle.putLong(BookEntry.EXTRA_SLOW_QUERY_THRESHOLD_MS, getThresholdMillis());
+        bundle.putLongArray(BookEntry.EXTRA_SLOW_QUERY_TIMES, times);
+        bundle.putStringArray(BookEntry.EXTRA_SLOW_QUERY_SQL, sqlShapes);
+        bundle.putIntArray(BookEntry.EXTRA_SLOW_QUERY_BIND_COUNTS, bindCounts);
+        bundle.putLongArray(BookEntry.EXTRA_SLOW_QUERY_DURATIONS_MICROS, durations);
+        bundle.putStringArray(BookEntry.EXTRA_SLOW_QUERY_PLANS, plans);
+    }
+
+    /**
+     * @return the given SQL with all string and number literals replaced by ?
+     */
+    static String toShape(String sql) {
+        return LITERALS.matcher(sql).replaceAll("?");
+    }
+
+    /**
+     * @return the details of the query plan of the given query, one line per step
+     */
+    private static String explain(SQLiteDatabase database, String sql, String[] selectionArgs) {
+        Cursor cursor = database.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        try {
+            int detailColumn = cursor.getColumnIndexOrThrow("detail");
+            StringBuilder plan = new StringBuilder();
+            while (cursor.moveToNext()) {
+                if (plan.length() > 0) {
+                    plan.append('\n');
+                }
+                plan.append(cursor.getString(detailColumn));
+            }
+            return plan.toString();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.inventoryapp.data.BookContract.StockMovementEntry;
+
+/**
+ * Queries and maintenance of the stock movements and snapshots, see {@link StockMovementEntry}.
+ * The quantity of a book at a time is its latest snapshot up to that time plus all remaining
+ * movements up to that time.
+ * <p>
+ * A snapshot at a time contains all movements up to and including that time which existed when
+ * it was taken, and those are deleted with it. So every movement that is left is after the
+ * snapshot, even if it has the same time because it was written in the same millisecond.
+ */
+final class StockLedger {
+
+    private static final String SNAPSHOTS = BookDbHelper.TABLE_STOCK_SNAPSHOTS;
+    private static final String MOVEMENTS = StockMovementEntry.TABLE_NAME;
+
+    /**
+     * Latest snapshot of a book (?1) up to a time (?2)
+     */
+    private static final String SQL_SNAPSHOT_QUANTITY = "SELECT " + BookDbHelper.COLUMN_SNAPSHOT_QUANTITY
+            + " FROM " + SNAPSHOTS + " WHERE " + BookDbHelper.COLUMN_SNAPSHOT_BOOK_ID + " = ?1 AND "
+            + BookDbHelper.COLUMN_SNAPSHOT_TIME + " <= ?2 ORDER BY " + BookDbHelper.COLUMN_SNAPSHOT_TIME
+            + " DESC LIMIT 1";
+
+    private static final String SQL_QUANTITY_AT = "SELECT IFNULL((" + SQL_SNAPSHOT_QUANTITY + "), 0)"
+            + " + (SELECT IFNULL(SUM(" + StockMovementEntry.COLUMN_DELTA + "), 0) FROM " + MOVEMENTS
+            + " WHERE " + StockMovementEntry.COLUMN_BOOK_ID + " = ?1"
+            + " AND " + StockMovementEntry.COLUMN_TIME + " <= ?2)";
+
+    /**
+     * Add a snapshot at the compaction time (?) for each book with movements up to that time.
+     * A snapshot at exactly that time already contains the movements compacted with it, so it
+     * is replaced by the sum of itself and the movements that came in later.
+     */
+    private static final String SQL_INSERT_SNAPSHOTS = "INSERT OR REPLACE INTO " + SNAPSHOTS + " ("
+            + BookDbHelper.COLUMN_SNAPSHOT_BOOK_ID + ", " + BookDbHelper.COLUMN_SNAPSHOT_TIME + ", "
+            + BookDbHelper.COLUMN_SNAPSHOT_QUANTITY + ") SELECT m." + StockMovementEntry.COLUMN_BOOK_ID
+            + ", ?1, IFNULL((SELECT s." + BookDbHelper.COLUMN_SNAPSHOT_QUANTITY + " FROM " + SNAPSHOTS + " s"
+            + " WHERE s." + BookDbHelper.COLUMN_SNAPSHOT_BOOK_ID + " = m." + StockMovementEntry.COLUMN_BOOK_ID
+            + " AND s." + BookDbHelper.COLUMN_SNAPSHOT_TIME + " <= ?1"
+            + " ORDER BY s." + BookDbHelper.COLUMN_SNAPSHOT_TIME + " DESC LIMIT 1), 0)"
+            + " + SUM(m." + StockMovementEntry.COLUMN_DELTA + ")"
+            + " FROM " + MOVEMENTS + " m WHERE m." + StockMovementEntry.COLUMN_TIME + " <= ?1"
+            + " GROUP BY m." + StockMovementEntry.COLUMN_BOOK_ID;
+    private static final String SQL_DELETE_MOVEMENTS = "DELETE FROM " + MOVEMENTS
+            + " WHERE " + StockMovementEntry.COLUMN_TIME + " <= ?";
+
+    private StockLedger() {
+    }
+
+    /**
+     * @return the quantity of the given book at the given time. Before the last compaction,
+     * this is the quantity at the latest snapshot up to that time.
+     */
+    static long getQuantityAt(SQLiteDatabase database, long bookId, long time) {
+        SQLiteStatement statement = database.compileStatement(SQL_QUANTITY_AT);
+        try {
+            statement.bindLong(1, bookId);
+            statement.bindLong(2, time);
+            return statement.simpleQueryForLong();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Roll all movements up to the given time into a snapshot per book and delete them.
+     * Books without movements keep their previous snapshot, which is still up to date.
+     * Must be called inside a transaction.
+     *
+     * @return the number of deleted movements
+     */
+    static int compact(SQLiteDatabase database, long time) {
+        SQLiteStatement statement = database.compileStatement(SQL_INSERT_SNAPSHOTS);
+        try {
+            statement.bindLong(1, time);
+            statement.execute();
+        } finally {
+            statement.close();
+        }
+
+        statement = database.compileStatement(SQL_DELETE_MOVEMENTS);
+        try {
+            statement.bindLong(1, time);
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.android.inventoryapp.data;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CsvTest {
+
+    @Test
+    public void writtenRecords_areReadBack() throws IOException {
+        StringWriter output = new StringWriter();
+        Csv.writeRecord(output, "plain", "with, comma", "with \"quotes\"", "two\nlines", "");
+        Csv.writeRecord(output, "second");
+
+        Csv.Reader reader = new Csv.Reader(new BufferedReader(new StringReader(output.toString())));
+        List<String> fields = new ArrayList<>();
+
+        assertTrue(reader.readRecord(fields));
+        assertEquals(Arrays.asList("plain", "with, comma", "with \"quotes\"", "two\nlines", ""), fields);
+        assertEquals(1, reader.getRecordLineNumber());
+
+        assertTrue(reader.readRecord(fields));
+        assertEquals(Arrays.asList("second"), fields);
+        assertEquals(3, reader.getRecordLineNumber());
+
+        assertFalse(reader.readRecord(fields));
+    }
+
+    @Test(expected = IOException.class)
+    public void unterminatedQuote_fails() throws IOException {
+        Csv.Reader reader = new Csv.Reader(new BufferedReader(new StringReader("\"open,field\nnext")));
+        reader.readRecord(new ArrayList<String>());
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.android.inventoryapp.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class IsbnTest {
+
+    @Test
+    public void isbn13_isKeptAsDigits() {
+        assertEquals("9780306406157", Isbn.normalize("978-0-306-40615-7"));
+        assertEquals("9780306406157", Isbn.normalize("9780306406157"));
+        assertEquals("9791090636071", Isbn.normalize("979 10 90636 07 1"));
+    }
+
+    @Test
+    public void isbn10_isConvertedToIsbn13() {
+        assertEquals("9780306406157", Isbn.normalize("0-306-40615-2"));
+        assertEquals("9780804429573", Isbn.normalize("080442957x"));
+    }
+
+    @Test
+    public void invalidIsbns_areRejected() {
+        String[] invalid = {"", "978030640615", "9780306406158", "0-306-40615-3", "12345678X0",
+                "4006381333931", "978030640615x"};
+        for (String isbn : invalid) {
+            try {
+                Isbn.normalize(isbn);
+                fail("Accepted " + isbn);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.android.inventoryapp.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProviderMetricsTest {
+
+    private static final int BOOKS = 100;
+    private static final int BOOK_ID = 101;
+
+    private final ProviderMetrics mMetrics = new ProviderMetrics(new int[]{BOOKS, BOOK_ID},
+            new String[]{"BOOKS", "BOOK_ID"});
+
+    @Test
+    public void buckets_arePowersOfTwo() {
+        assertEquals(0, ProviderMetrics.bucket(0));
+        assertEquals(1, ProviderMetrics.bucket(1));
+        assertEquals(2, ProviderMetrics.bucket(2));
+        assertEquals(2, ProviderMetrics.bucket(3));
+        assertEquals(3, ProviderMetrics.bucket(4));
+        assertEquals(10, ProviderMetrics.bucket(1023));
+        assertEquals(ProviderMetrics.BUCKET_COUNT - 1, ProviderMetrics.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void calls_areCountedPerOperationAndMatch() {
+        long start = System.nanoTime();
+        mMetrics.record(ProviderMetrics.QUERY, BOOKS, start, 50);
+        mMetrics.record(ProviderMetrics.QUERY, BOOKS, start, 20);
+        mMetrics.record(ProviderMetrics.UPDATE, BOOK_ID, start, 1);
+        mMetrics.recordError(ProviderMetrics.UPDATE, BOOK_ID, start);
+        mMetrics.recordError(ProviderMetrics.DELETE, -1, start);
+
+        assertEquals(2, mMetrics.getCalls(ProviderMetrics.QUERY, BOOKS));
+        assertEquals(0, mMetrics.getErrors(ProviderMetrics.QUERY, BOOKS));
+        assertEquals(70, mMetrics.getRows(ProviderMetrics.QUERY, BOOKS));
+        assertEquals(0, mMetrics.getCalls(ProviderMetrics.QUERY, BOOK_ID));
+
+        assertEquals(2, mMetrics.getCalls(ProviderMetrics.UPDATE, BOOK_ID));
+        assertEquals(1, mMetrics.getErrors(ProviderMetrics.UPDATE, BOOK_ID));
+        assertEquals(1, mMetrics.getRows(ProviderMetrics.UPDATE, BOOK_ID));
+
+        // URIs that did not match share their own statistics
+        assertEquals(1, mMetrics.getErrors(ProviderMetrics.DELETE, -2));
+    }
+
+    @Test
+    public void percentiles_areBucketBounds() {
+        assertEquals(0, mMetrics.getLatencyMicros(ProviderMetrics.QUERY, BOOKS, 50));
+
+        // 99 calls of at least 600 microseconds and a single one of at least 100 milliseconds
+        for (int i = 0; i < 99; i++) {
+            mMetrics.record(ProviderMetrics.QUERY, BOOKS, System.nanoTime() - 600000, 1);
+        }
+        mMetrics.record(ProviderMetrics.QUERY, BOOKS, System.nanoTime() - 100000000, 1);
+
+        long median = mMetrics.getLatencyMicros(ProviderMetrics.QUERY, BOOKS, 50);
+        assertTrue(median >= 600 && median <= 1023);
+        assertEquals(median, mMetrics.getLatencyMicros(ProviderMetrics.QUERY, BOOKS, 99));
+        assertTrue(mMetrics.getLatencyMicros(ProviderMetrics.QUERY, BOOKS, 100) >= 100000);
+    }
+}
@@ -0,0 +1,299 @@
+package com.example.android.inventoryapp.data.benchmark;
+
+import android.app.Application;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.android.inventoryapp.data.BookContract;
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookContract.StockMovementEntry;
+import com.example.android.inventoryapp.data.BookProvider;
+import com.example.android.inventoryapp.data.BookSummary;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the operations of {@link BookProvider} on catalogs of realistic sizes, running on
+ * the JVM with the SQLite library of Robolectric. Run it with {@code ./gradlew benchmark}; it
+ * is excluded from the regular unit tests.
+ * <p>
+ * The results are written as JSON to the file given by the system property
+ * {@code benchmark.output}. The catalog sizes are given as a comma separated list by
+ * {@code benchmark.sizes}, and the number of runs per operation by {@code benchmark.runs}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27, application = Application.class)
+public class BookProviderBenchmark {
+
+    private static final String DEFAULT_SIZES = "1000,100000,1000000";
+    private static final int DEFAULT_RUNS = 1000;
+    /**
+     * Runs of each operation before the measurement, so the JIT compiled the code paths
+     */
+    private static final int WARMUP_RUNS = 100;
+    /**
+     * Books per bulk insert, the same as the chunks of the CSV import
+     */
+    private static final int BULK_INSERT_SIZE = 500;
+    private static final int PAGE_SIZE = 50;
+    private static final int SUPPLIER_COUNT = 100;
+
+    private static final String[] WORDS = {"Bible", "Faust", "Odyssey", "History", "Garden",
+            "Winter", "Secret", "River", "Kingdom", "Letters", "Night", "Stone", "Voyage", "War",
+            "Peace", "Island", "Mirror", "Shadow", "Empire", "Journey"};
+
+    private BookProvider mProvider;
+    private final Random mRandom = new Random(42);
+    /**
+     * Number of books inserted so far. IDs are handed out in order and never reused, so the
+     * books of the current catalog have the IDs after the ones inserted before it.
+     */
+    private long mInsertedBooks = 0;
+    private long mDeletedBooks = 0;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.buildContentProvider(BookProvider.class)
+                .create(BookContract.CONTENT_AUTHORITY).get();
+    }
+
+    @Test
+    public void benchmark() throws IOException, JSONException {
+        int runs = Integer.parseInt(System.getProperty("benchmark.runs", String.valueOf(DEFAULT_RUNS)));
+        JSONArray results = new JSONArray();
+        for (String size : System.getProperty("benchmark.sizes", DEFAULT_SIZES).split(",")) {
+            benchmarkCatalog(Integer.parseInt(size.trim()), runs, results);
+        }
+
+        JSONObject report = new JSONObject();
+        report.put("benchmark", getClass().getSimpleName());
+        report.put("commit", System.getProperty("benchmark.commit", ""));
+        report.put("timestamp", System.currentTimeMillis());
+        report.put("results", results);
+        writeReport(report);
+    }
+
+    /**
+     * Fill an empty catalog with the given number of books, run each operation on it and delete
+     * all books again
+     */
+    private void benchmarkCatalog(int size, int runs, JSONArray results) throws JSONException {
+        long firstId = mInsertedBooks + 1;
+        results.put(measureBulkInsert(size));
+        long lastId = mInsertedBooks;
+
+        results.put(measureQuery(size, runs));
+        results.put(measureQueryById(size, runs, firstId, lastId));
+        results.put(measureQuantityUpdate(size, runs, firstId, lastId));
+        results.put(measureInsert(size, runs));
+        results.put(measureCompact("compactMovements", size));
+        results.put(measureDeleteAll(size));
+        // The ledger was empty before the delete, so these are the movements the delete wrote
+        results.put(measureCompact("compactDeletedStock", size));
+    }
+
+    private JSONObject measureBulkInsert(int size) throws JSONException {
+        Measurement measurement = new Measurement("bulkInsert", size,
+                (size + BULK_INSERT_SIZE - 1) / BULK_INSERT_SIZE);
+        measurement.start();
+        for (int inserted = 0; inserted < size; inserted += BULK_INSERT_SIZE) {
+            ContentValues[] books = new ContentValues[Math.min(BULK_INSERT_SIZE, size - inserted)];
+            for (int i = 0; i < books.length; i++) {
+                books[i] = createBook();
+            }
+            long start = System.nanoTime();
+            int rows = mProvider.bulkInsert(BookEntry.CONTENT_URI, books);
+            measurement.record(start, rows);
+            mInsertedBooks += rows;
+        }
+        measurement.stop();
+        return measurement.toJson();
+    }
+
+    /**
+     * Read a page of the catalog after a random product name, the way the catalog list does
+     */
+    private JSONObject measureQuery(int size, int runs) throws JSONException {
+        Measurement measurement = new Measurement("queryPage", size, runs);
+        for (int run = -WARMUP_RUNS; run < runs; run++) {
+            if (run == 0) {
+                measurement.start();
+            }
+            Uri uri = BookEntry.CONTENT_URI.buildUpon()
+                    .appendQueryParameter(BookEntry.QUERY_PARAMETER_LIMIT, String.valueOf(PAGE_SIZE))
+                    .appendQueryParameter(BookEntry.QUERY_PARAMETER_AFTER_KEY, createProductName())
+                    .appendQueryParameter(BookEntry.QUERY_PARAMETER_AFTER_ID, "0")
+                    .build();
+            long start = System.nanoTime();
+            int rows = readAll(mProvider.query(uri, BookSummary.PROJECTION, null, null, null));
+            if (run >= 0) {
+                measurement.record(start, rows);
+            }
+        }
+        measurement.stop();
+        return measurement.toJson();
+    }
+
+    private JSONObject measureQueryById(int size, int runs, long firstId, long lastId) throws JSONException {
+        Measurement measurement = new Measurement("queryById", size, runs);
+        for (int run = -WARMUP_RUNS; run < runs; run++) {
+            if (run == 0) {
+                measurement.start();
+            }
+            Uri uri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, randomId(firstId, lastId));
+            long start = System.nanoTime();
+            int rows = readAll(mProvider.query(uri, BookSummary.PROJECTION, null, null, null));
+            if (run >= 0) {
+                measurement.record(start, rows);
+            }
+        }
+        measurement.stop();
+        return measurement.toJson();
+    }
+
+    private JSONObject measureQuantityUpdate(int size, int runs, long firstId, long lastId)
+            throws JSONException {
+        Measurement measurement = new Measurement("updateQuantity", size, runs);
+        ContentValues values = new ContentValues();
+        for (int run = -WARMUP_RUNS; run < runs; run++) {
+            if (run == 0) {
+                measurement.start();
+            }
+            values.put(BookEntry.COLUMN_QUANTITY, mRandom.nextInt(100));
+            Uri uri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, randomId(firstId, lastId));
+            long start = System.nanoTime();
+            int rows = mProvider.update(uri, values, null, null);
+            if (run >= 0) {
+                measurement.record(start, rows);
+            }
+        }
+        measurement.stop();
+        return measurement.toJson();
+    }
+
+    private JSONObject measureInsert(int size, int runs) throws JSONException {
+        Measurement measurement = new Measurement("insert", size, runs);
+        for (int run = -WARMUP_RUNS; run < runs; run++) {
+            if (run == 0) {
+                measurement.start();
+            }
+            ContentValues book = createBook();
+            long start = System.nanoTime();
+            Uri uri = mProvider.insert(BookEntry.CONTENT_URI, book);
+            if (run >= 0) {
+                measurement.record(start, uri == null ? 0 : 1);
+            }
+            mInsertedBooks++;
+        }
+        measurement.stop();
+        return measurement.toJson();
+    }
+
+    private JSONObject measureDeleteAll(int size) throws JSONException {
+        Measurement measurement = new Measurement("deleteAll", size, 1);
+        measurement.start();
+        long start = System.nanoTime();
+        int rows = mProvider.delete(BookEntry.CONTENT_URI, null, null);
+        measurement.record(start, rows);
+        measurement.stop();
+
+        // The next catalog starts empty
+        assertEquals(mInsertedBooks - mDeletedBooks, rows);
+        mDeletedBooks += rows;
+        return measurement.toJson();
+    }
+
+    /**
+     * Roll all stock movements up to now into snapshots
+     */
+    private JSONObject measureCompact(String operation, int size) throws JSONException {
+        Measurement measurement = new Measurement(operation, size, 1);
+        Bundle extras = new Bundle();
+        extras.putLong(StockMovementEntry.EXTRA_TIME, System.currentTimeMillis());
+        measurement.start();
+        long start = System.nanoTime();
+        Bundle result = mProvider.call(StockMovementEntry.METHOD_COMPACT, null, extras);
+        measurement.record(start, result.getInt(StockMovementEntry.EXTRA_MOVEMENTS_COMPACTED));
+        measurement.stop();
+        return measurement.toJson();
+    }
+
+    private ContentValues createBook() {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, createProductName());
+        values.put(BookEntry.COLUMN_PRICE, 100 + mRandom.nextInt(10000));
+        values.put(BookEntry.COLUMN_QUANTITY, mRandom.nextInt(100));
+        int supplier = mRandom.nextInt(SUPPLIER_COUNT);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier " + supplier);
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE, "+1 555 " + (1000 + supplier));
+        return values;
+    }
+
+    private String createProductName() {
+        return WORDS[mRandom.nextInt(WORDS.length)] + " " + WORDS[mRandom.nextInt(WORDS.length)]
+                + " " + mRandom.nextInt(100000);
+    }
+
+    private long randomId(long firstId, long lastId) {
+        return firstId + (long) (mRandom.nextDouble() * (lastId - firstId + 1));
+    }
+
+    /**
+     * Move through all rows like an adapter would and close the cursor
+     *
+     * @return the number of rows
+     */
+    private static int readAll(Cursor cursor) {
+        try {
+            int rows = 0;
+            while (cursor.moveToNext()) {
+                cursor.getLong(0);
+                cursor.getString(1);
+                rows++;
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void writeReport(JSONObject report) throws IOException, JSONException {
+        String json = report.toString(2);
+        System.out.println(json);
+
+        String output = System.getProperty("benchmark.output");
+        if (output == null) {
+            return;
+        }
+        File file = new File(output);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(json);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.android.inventoryapp.data.benchmark;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Records the latency of each run of one operation and the bytes the benchmark thread
+ * allocated meanwhile. Allocations of the native SQLite library are not included.
+ */
+final class Measurement {
+
+    private static final com.sun.management.ThreadMXBean sThreadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final String mOperation;
+    private final int mCatalogSize;
+    private final long[] mLatencies;
+    private int mCount = 0;
+    private long mRows = 0;
+    private long mStartNanos;
+    private long mStartAllocatedBytes;
+    private long mTotalNanos;
+    private long mAllocatedBytes;
+
+    /**
+     * @param catalogSize number of books in the catalog when the operation ran
+     * @param maxRuns     maximum number of runs that will be recorded
+     */
+    Measurement(String operation, int catalogSize, int maxRuns) {
+        mOperation = operation;
+        mCatalogSize = catalogSize;
+        mLatencies = new long[maxRuns];
+    }
+
+    /**
+     * Start the measurement, right before the first recorded run
+     */
+    void start() {
+        mStartAllocatedBytes = allocatedBytes();
+        mStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Record a single run
+     *
+     * @param startNanos the {@link System#nanoTime()} before the run
+     * @param rows       number of rows the run read or wrote
+     */
+    void record(long startNanos, long rows) {
+        mLatencies[mCount++] = System.nanoTime() - startNanos;
+        mRows += rows;
+    }
+
+    /**
+     * Stop the measurement, right after the last recorded run
+     */
+    void stop() {
+        mTotalNanos = System.nanoTime() - mStartNanos;
+        mAllocatedBytes = allocatedBytes() - mStartAllocatedBytes;
+    }
+
+    JSONObject toJson() throws JSONException {
+        long[] latencies = Arrays.copyOf(mLatencies, mCount);
+        Arrays.sort(latencies);
+        double seconds = mTotalNanos / 1e9;
+
+        JSONObject json = new JSONObject();
+        json.put("operation", mOperation);
+        json.put("catalogSize", mCatalogSize);
+        json.put("runs", mCount);
+        json.put("rows", mRows);
+        json.put("runsPerSecond", mCount / seconds);
+        json.put("rowsPerSecond", mRows / seconds);
+        json.put("p50Micros", percentile(latencies, 50) / 1e3);
+        json.put("p99Micros", percentile(latencies, 99) / 1e3);
+        json.put("maxMicros", latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e3);
+        json.put("allocatedBytesPerRun", mCount == 0 ? 0 : mAllocatedBytes / mCount);
+        json.put("allocatedMegabytesPerSecond", mAllocatedBytes / 1e6 / seconds);
+        return json;
+    }
+
+    private static long percentile(long[] sortedLatencies, int percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(0, index)];
+    }
+
+    private static long allocatedBytes() {
+        return sThreadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}